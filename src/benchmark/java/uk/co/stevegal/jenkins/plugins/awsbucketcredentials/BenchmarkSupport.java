@@ -0,0 +1,70 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.s3.AmazonS3Client;
+import jenkins.security.ConfidentialStore;
+import jenkins.security.DefaultConfidentialStore;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Wiring shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * {@link hudson.util.Secret} needs a confidential store, which normally comes from a running jenkins.
+     */
+    static void installConfidentialStore() throws Exception {
+        File root = File.createTempFile("benchmark", "secrets");
+        if (!root.delete() || !root.mkdirs()) {
+            throw new IllegalStateException("could not create " + root);
+        }
+        final ConfidentialStore store = new DefaultConfidentialStore(root);
+        Field test = ConfidentialStore.class.getDeclaredField("TEST");
+        test.setAccessible(true);
+        test.set(null, new InheritableThreadLocal<ConfidentialStore>() {
+            @Override
+            protected ConfidentialStore initialValue() {
+                return store;
+            }
+        });
+    }
+
+    static byte[] payload(int size) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        Random random = new Random(size);
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return payload;
+    }
+
+    static void useStandIns(AwsBucketCredentialsImpl credentials, final AmazonS3Client s3, final AWSKMSClient kms)
+            throws Exception {
+        set(credentials, "amazonS3ClientBuilder", new AwsS3ClientBuilder() {
+            @Override
+            public AmazonS3Client build() {
+                return s3;
+            }
+        });
+        set(credentials, "amazonKmsClientBuilder", new AwsKmsClientBuilder() {
+            @Override
+            public AWSKMSClient build() {
+                return kms;
+            }
+        });
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
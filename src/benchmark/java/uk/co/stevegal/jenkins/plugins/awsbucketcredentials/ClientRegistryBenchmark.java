@@ -0,0 +1,52 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.s3.AmazonS3Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of getting a client from a warm registry compared to building one from cold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientRegistryBenchmark {
+
+    private final AwsS3ClientBuilder s3ClientBuilder = new AwsS3ClientBuilder().region("eu-west-1");
+    private final AwsKmsClientBuilder kmsClientBuilder = new AwsKmsClientBuilder().region("eu-west-1");
+
+    @Benchmark
+    public AmazonS3Client warmS3Client() {
+        return this.s3ClientBuilder.build();
+    }
+
+    @Benchmark
+    public AmazonS3Client coldS3Client() {
+        AwsClientRegistry.shutdownAllRegistries();
+        return this.s3ClientBuilder.build();
+    }
+
+    @Benchmark
+    public AWSKMSClient warmKmsClient() {
+        return this.kmsClientBuilder.build();
+    }
+
+    @Benchmark
+    public AWSKMSClient coldKmsClient() {
+        AwsClientRegistry.shutdownAllRegistries();
+        return this.kmsClientBuilder.build();
+    }
+}
@@ -0,0 +1,67 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import hudson.util.Secret;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of {@link AwsBucketCredentialsImpl#getPassword()} with s3 and kms replaced by in memory stand-ins.
+ * cacheTtlSeconds=0 with conditionalReads=false is the uncached path: a full read and decrypt every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetPasswordBenchmark {
+
+    @Param({"64", "4096", "65536"})
+    public int payloadSize;
+
+    @Param({"0", "300"})
+    public int cacheTtlSeconds;
+
+    @Param({"true", "false"})
+    public boolean conditionalReads;
+
+    @Param({"true", "false"})
+    public boolean useKms;
+
+    private AwsBucketCredentialsImpl credentials;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.installConfidentialStore();
+        this.credentials = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, "benchmark", "eu-west-1",
+                "bucket", "/path", "username", false, "benchmark", this.useKms, false, null, null, null, null);
+        this.credentials.setCacheTtlSeconds(this.cacheTtlSeconds);
+        BenchmarkSupport.useStandIns(this.credentials,
+                new StandInS3Client(BenchmarkSupport.payload(this.payloadSize), this.conditionalReads ? "etag" : null),
+                new StandInKmsClient());
+    }
+
+    @Benchmark
+    public Secret getPassword() {
+        return this.credentials.getPassword();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Secret getPasswordFromEightThreads() {
+        return this.credentials.getPassword();
+    }
+}
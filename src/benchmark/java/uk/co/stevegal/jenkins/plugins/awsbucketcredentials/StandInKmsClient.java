@@ -0,0 +1,26 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A kms whose ciphertext is the plaintext, so benchmarks measure the plugin rather than kms.
+ */
+public class StandInKmsClient extends AWSKMSClient {
+
+    public StandInKmsClient() {
+        super(new AnonymousAWSCredentials());
+    }
+
+    @Override
+    public DecryptResult decrypt(DecryptRequest decryptRequest) {
+        ByteBuffer ciphertext = decryptRequest.getCiphertextBlob().duplicate();
+        byte[] plaintext = new byte[ciphertext.remaining()];
+        ciphertext.get(plaintext);
+        return new DecryptResult().withPlaintext(ByteBuffer.wrap(plaintext));
+    }
+}
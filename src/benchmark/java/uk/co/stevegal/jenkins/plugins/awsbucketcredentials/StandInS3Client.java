@@ -0,0 +1,47 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Serves a single object from memory, honouring If-None-Match, so benchmarks measure the plugin rather than s3.
+ */
+public class StandInS3Client extends AmazonS3Client {
+
+    private final byte[] content;
+    private final String eTag;
+
+    /**
+     * @param eTag the etag to serve, or null to behave like a store that never reports one
+     */
+    public StandInS3Client(byte[] content, String eTag) {
+        super(new AnonymousAWSCredentials());
+        this.content = content;
+        this.eTag = eTag;
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest getObjectRequest) {
+        if (null != this.eTag && getObjectRequest.getNonmatchingETagConstraints().contains(this.eTag)) {
+            return null;
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(this.content.length);
+        if (null != this.eTag) {
+            metadata.setHeader(Headers.ETAG, this.eTag);
+        }
+        S3Object object = new S3Object();
+        object.setBucketName(getObjectRequest.getBucketName());
+        object.setKey(getObjectRequest.getKey());
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(this.content), null));
+        return object;
+    }
+}
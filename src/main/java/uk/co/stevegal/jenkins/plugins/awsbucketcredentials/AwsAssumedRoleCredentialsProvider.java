@@ -0,0 +1,162 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicSessionCredentials;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
+import com.amazonaws.services.securitytoken.model.AssumeRoleRequest;
+import com.amazonaws.services.securitytoken.model.Credentials;
+import hudson.Util;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Session credentials for an assumed iam role, shared by every client that reads through the role. The role is
+ * assumed once and the session renewed in the background before it expires, so switching role costs no sts call
+ * on a build's thread except for the very first read.
+ */
+public class AwsAssumedRoleCredentialsProvider implements AWSCredentialsProvider {
+
+    static final String SESSION_SECONDS_PROPERTY = AwsAssumedRoleCredentialsProvider.class.getName() + ".sessionSeconds";
+    static final int DEFAULT_SESSION_SECONDS = 3600;
+    static final long RENEW_BEFORE_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final String SESSION_NAME = "jenkins-aws-bucket-credentials";
+
+    private static final Logger LOGGER = Logger.getLogger(AwsAssumedRoleCredentialsProvider.class.getName());
+    private static final ConcurrentMap<String, AwsAssumedRoleCredentialsProvider> PROVIDERS =
+            new ConcurrentHashMap<String, AwsAssumedRoleCredentialsProvider>();
+    private static final Executor EXECUTOR = createExecutor();
+
+    private final AWSSecurityTokenService sts;
+    private final Executor executor;
+    private final String roleArn;
+    private final String externalId;
+    private final int sessionSeconds;
+    private final AtomicBoolean renewing = new AtomicBoolean();
+    private volatile Session session;
+
+    AwsAssumedRoleCredentialsProvider(AWSSecurityTokenService sts, Executor executor, String roleArn,
+                                      String externalId, int sessionSeconds) {
+        this.sts = sts;
+        this.executor = executor;
+        this.roleArn = roleArn;
+        this.externalId = Util.fixEmptyAndTrim(externalId);
+        this.sessionSeconds = sessionSeconds;
+    }
+
+    /**
+     * @param configuration the proxy settings used to call sts the first time the role is assumed
+     * @return the provider shared by every client assuming the role with the external id
+     */
+    public static AwsAssumedRoleCredentialsProvider forRole(String roleArn, String externalId,
+                                                            ClientConfiguration configuration) {
+        roleArn = Util.fixEmptyAndTrim(roleArn);
+        externalId = Util.fixEmptyAndTrim(externalId);
+        String key = roleArn + "|" + Util.fixNull(externalId);
+        AwsAssumedRoleCredentialsProvider provider = PROVIDERS.get(key);
+        if (null == provider) {
+            AwsAssumedRoleCredentialsProvider created = new AwsAssumedRoleCredentialsProvider(
+                    new AWSSecurityTokenServiceClient(AwsCachedCredentialsProvider.get(), configuration), EXECUTOR,
+                    roleArn, externalId, Integer.getInteger(SESSION_SECONDS_PROPERTY, DEFAULT_SESSION_SECONDS));
+            provider = PROVIDERS.putIfAbsent(key, created);
+            if (null == provider) {
+                provider = created;
+            }
+        }
+        return provider;
+    }
+
+    @Override
+    public AWSCredentials getCredentials() {
+        Session current = this.session;
+        long now = System.currentTimeMillis();
+        if (null == current || now >= current.expiresAt) {
+            synchronized (this) {
+                current = this.session;
+                if (null == current || System.currentTimeMillis() >= current.expiresAt) {
+                    current = this.assumeRole();
+                }
+            }
+        } else if (now >= current.expiresAt - RENEW_BEFORE_EXPIRY_MILLIS) {
+            this.renewInBackground();
+        }
+        return current.credentials;
+    }
+
+    @Override
+    public void refresh() {
+        synchronized (this) {
+            this.assumeRole();
+        }
+    }
+
+    private void renewInBackground() {
+        if (!this.renewing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "could not renew session for " + roleArn + ", will try again", e);
+                    } finally {
+                        renewing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.renewing.set(false);
+        }
+    }
+
+    private Session assumeRole() {
+        LOGGER.fine("assuming role " + this.roleArn);
+        AssumeRoleRequest request = new AssumeRoleRequest()
+                .withRoleArn(this.roleArn)
+                .withRoleSessionName(SESSION_NAME)
+                .withDurationSeconds(this.sessionSeconds);
+        if (null != this.externalId) {
+            request.setExternalId(this.externalId);
+        }
+        Credentials credentials = this.sts.assumeRole(request).getCredentials();
+        Session assumed = new Session(new BasicSessionCredentials(credentials.getAccessKeyId(),
+                credentials.getSecretAccessKey(), credentials.getSessionToken()),
+                credentials.getExpiration().getTime());
+        this.session = assumed;
+        return assumed;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "AwsBucketCredentials assume role"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Session {
+        private final AWSCredentials credentials;
+        private final long expiresAt;
+
+        Session(AWSCredentials credentials, long expiresAt) {
+            this.credentials = credentials;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
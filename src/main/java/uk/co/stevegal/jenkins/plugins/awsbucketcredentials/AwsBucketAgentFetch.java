@@ -0,0 +1,122 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Where a credential's object lives and how to decrypt it, sent to a build agent so that the agent reads s3 and
+ * calls kms with its own aws identity instead of the controller doing so. Nothing secret is held here.
+ */
+public class AwsBucketAgentFetch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final String region;
+    private final String bucketName;
+    private final String bucketPath;
+    private final boolean useKms;
+    private final String kmsEncryptionContextKey;
+    private final String kmsEncryptionContextValue;
+    private final boolean s3Proxy;
+    private final boolean kmsProxy;
+    private final String proxyHost;
+    private final String proxyPort;
+    private final String roleArn;
+    private final String externalId;
+    private final String versionId;
+
+    AwsBucketAgentFetch(String id, String region, String bucketName, String bucketPath, boolean useKms,
+                        String kmsEncryptionContextKey, String kmsEncryptionContextValue, boolean s3Proxy,
+                        boolean kmsProxy, String proxyHost, String proxyPort, String roleArn, String externalId,
+                        String versionId) {
+        this.id = id;
+        this.region = region;
+        this.bucketName = bucketName;
+        this.bucketPath = bucketPath;
+        this.useKms = useKms;
+        this.kmsEncryptionContextKey = kmsEncryptionContextKey;
+        this.kmsEncryptionContextValue = kmsEncryptionContextValue;
+        this.s3Proxy = s3Proxy;
+        this.kmsProxy = kmsProxy;
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+        this.roleArn = roleArn;
+        this.externalId = externalId;
+        this.versionId = versionId;
+    }
+
+    /**
+     * Reads and decrypts the object on the jvm this is called in.
+     */
+    public String readPlainText() {
+        AwsBucketCredentialsImpl reader = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL,
+                this.id, this.region, this.bucketName, this.bucketPath, "", this.s3Proxy, "",
+                this.useKms, this.kmsProxy, this.kmsEncryptionContextKey, this.kmsEncryptionContextValue,
+                this.proxyHost, this.proxyPort);
+        reader.setRoleArn(this.roleArn);
+        reader.setExternalId(this.externalId);
+        reader.setVersionId(this.versionId);
+        return reader.readPlainText();
+    }
+
+    /**
+     * @return a callable that reads the password on the agent it is run on and returns it
+     */
+    public MasterToSlaveCallable<String, IOException> plainText() {
+        return new PlainText(this);
+    }
+
+    /**
+     * @return a callable that reads the password on the agent and writes it to the file it is run against, so the
+     * password never passes through the controller
+     */
+    public MasterToSlaveFileCallable<Void> toFile() {
+        return new ToFile(this);
+    }
+
+    private static final class PlainText extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final AwsBucketAgentFetch fetch;
+
+        PlainText(AwsBucketAgentFetch fetch) {
+            this.fetch = fetch;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return this.fetch.readPlainText();
+        }
+    }
+
+    private static final class ToFile extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final AwsBucketAgentFetch fetch;
+
+        ToFile(AwsBucketAgentFetch fetch) {
+            this.fetch = fetch;
+        }
+
+        @Override
+        public Void invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+            byte[] content = this.fetch.readPlainText().getBytes("UTF-8");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+                Arrays.fill(content, (byte) 0);
+            }
+            return null;
+        }
+    }
+}
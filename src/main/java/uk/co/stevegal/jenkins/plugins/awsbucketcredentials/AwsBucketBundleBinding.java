@@ -0,0 +1,97 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.credentialsbinding.BindingDescriptor;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * This binds every entry of an AwsBucketBundleCredentials to its own environment variable
+ */
+public class AwsBucketBundleBinding extends MultiBinding<AwsBucketBundleCredentials> {
+
+    private final String variablePrefix;
+
+    @DataBoundConstructor
+    public AwsBucketBundleBinding(@Nullable String variablePrefix, String credentialsId) {
+        super(credentialsId);
+        this.variablePrefix = Util.fixNull(variablePrefix).trim();
+    }
+
+    @Override
+    protected Class<AwsBucketBundleCredentials> type() {
+        return AwsBucketBundleCredentials.class;
+    }
+
+    @Override
+    public MultiEnvironment bind(@Nonnull Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+        AwsBucketBundleCredentials credentials = this.getCredentials(build);
+        Map<String, String> map = new HashMap<String, String>();
+        for (Map.Entry<String, Secret> entry : credentials.getEntries().entrySet()) {
+            map.put(this.variableName(entry.getKey()), entry.getValue().getPlainText());
+        }
+        return new MultiEnvironment(map);
+    }
+
+    String variableName(String entryName) {
+        return this.variablePrefix + entryName.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    public String getVariablePrefix() {
+        return variablePrefix;
+    }
+
+    /**
+     * Entry names are only known up front when the bundle declares them, so a bundle without declared names sets
+     * no variables that are known before it is bound.
+     */
+    @Override
+    public Set<String> variables() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (null == jenkins) {
+            return Collections.emptySet();
+        }
+        AwsBucketBundleCredentialsImpl bundle = CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(AwsBucketBundleCredentialsImpl.class, jenkins, ACL.SYSTEM,
+                        Collections.<DomainRequirement>emptyList()),
+                CredentialsMatchers.withId(this.getCredentialsId()));
+        if (null == bundle) {
+            return Collections.emptySet();
+        }
+        Set<String> variables = new TreeSet<String>();
+        for (String entryName : bundle.entryNameSet()) {
+            variables.add(this.variableName(entryName));
+        }
+        return variables;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BindingDescriptor<AwsBucketBundleCredentials> {
+
+        @Override
+        protected Class<AwsBucketBundleCredentials> type() {
+            return AwsBucketBundleCredentials.class;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Aws Bucket bundle credentials";
+        }
+    }
+}
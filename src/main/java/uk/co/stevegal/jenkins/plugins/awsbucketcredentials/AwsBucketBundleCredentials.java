@@ -0,0 +1,35 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsNameProvider;
+import com.cloudbees.plugins.credentials.NameWith;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.util.Secret;
+
+import java.util.Map;
+
+/**
+ * A credential that reads a single encrypted document of named secrets from an S3 bucket
+ */
+@NameWith(value=AwsBucketBundleCredentials.NameProvider.class, priority = 1)
+public interface AwsBucketBundleCredentials extends StandardCredentials {
+
+    String getDisplayName();
+
+    /**
+     * @return every named secret in the bundle, read and decrypted once for all of them
+     */
+    @NonNull
+    Map<String, Secret> getEntries();
+
+    class NameProvider extends CredentialsNameProvider<AwsBucketBundleCredentials> {
+
+        @NonNull
+        @Override
+        public String getName(@NonNull AwsBucketBundleCredentials awsBucketBundleCredentials) {
+            String description = Util.fixEmpty(awsBucketBundleCredentials.getDescription());
+            return awsBucketBundleCredentials.getDisplayName()+ (description==null?"":" ("+description+")");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsDescriptor;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.util.Secret;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reads a bundle of named secrets from one S3 object. The object is a flat json object or a properties file,
+ * so a single s3 read and kms decrypt serve every secret in it.
+ */
+public class AwsBucketBundleCredentialsImpl extends BaseStandardCredentials implements AwsBucketBundleCredentials {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Does the reading, decrypting and caching of the whole document on our behalf.
+     */
+    private final AwsBucketCredentialsImpl document;
+
+    /**
+     * The names of the entries the bundle is expected to hold, separated by commas or whitespace. They are given up
+     * front so that bindings can declare their variables, and the entries be offered as credentials, without
+     * reading the bundle.
+     */
+    private String entryNames;
+
+    @DataBoundConstructor
+    public AwsBucketBundleCredentialsImpl(@CheckForNull CredentialsScope scope, @CheckForNull String id, @CheckForNull String region,
+                                          @CheckForNull String bucketName, @CheckForNull String bucketPath,
+                                          boolean s3Proxy, @CheckForNull String description,
+                                          boolean useKms, boolean kmsProxy, String kmsEncryptionContextKey, String kmsEncryptionContextValue,
+                                          String proxyHost, String proxyPort) {
+        super(scope, id, description);
+        this.document = new AwsBucketCredentialsImpl(scope, this.getId(), region, bucketName, bucketPath, "",
+                s3Proxy, description, useKms, kmsProxy, kmsEncryptionContextKey, kmsEncryptionContextValue,
+                proxyHost, proxyPort);
+    }
+
+    @DataBoundSetter
+    public void setCacheTtlSeconds(int cacheTtlSeconds) {
+        this.document.setCacheTtlSeconds(cacheTtlSeconds);
+    }
+
+    public int getCacheTtlSeconds() {
+        return this.document.getCacheTtlSeconds();
+    }
+
+    @DataBoundSetter
+    public void setRoleArn(String roleArn) {
+        this.document.setRoleArn(roleArn);
+    }
+
+    public String getRoleArn() {
+        return this.document.getRoleArn();
+    }
+
+    @DataBoundSetter
+    public void setExternalId(String externalId) {
+        this.document.setExternalId(externalId);
+    }
+
+    public String getExternalId() {
+        return this.document.getExternalId();
+    }
+
+    @DataBoundSetter
+    public void setVersionId(String versionId) {
+        this.document.setVersionId(versionId);
+    }
+
+    public String getVersionId() {
+        return this.document.getVersionId();
+    }
+
+    @DataBoundSetter
+    public void setEntryNames(String entryNames) {
+        this.entryNames = Util.fixEmptyAndTrim(entryNames);
+    }
+
+    public String getEntryNames() {
+        return this.entryNames;
+    }
+
+    /**
+     * @return the declared entry names, which is empty if none were given
+     */
+    @NonNull
+    public Set<String> entryNameSet() {
+        Set<String> names = new TreeSet<String>();
+        for (String name : Util.fixNull(this.entryNames).split("[,\\s]+")) {
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return this.document.getDisplayName();
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Secret> getEntries() {
+        return parse(this.document.getPassword().getPlainText());
+    }
+
+    static Map<String, Secret> parse(String content) {
+        Map<String, Secret> entries = new TreeMap<String, Secret>();
+        String trimmed = content.trim();
+        if (trimmed.startsWith("{")) {
+            try {
+                JSONObject json = JSONObject.fromObject(trimmed);
+                Iterator<?> keys = json.keys();
+                while (keys.hasNext()) {
+                    String key = (String) keys.next();
+                    entries.put(key, Secret.fromString(json.getString(key)));
+                }
+            } catch (JSONException e) {
+                throw new AwsBucketReadingException(e);
+            }
+        } else {
+            Properties properties = new Properties();
+            try {
+                properties.load(new StringReader(content));
+            } catch (IOException e) {
+                throw new AwsBucketReadingException(e);
+            }
+            for (String key : properties.stringPropertyNames()) {
+                entries.put(key, Secret.fromString(properties.getProperty(key)));
+            }
+        }
+        return entries;
+    }
+
+    public String getRegion() {
+        return this.document.getRegion();
+    }
+
+    public String getBucketName() {
+        return this.document.getBucketName();
+    }
+
+    public String getBucketPath() {
+        return this.document.getBucketPath();
+    }
+
+    public boolean isS3Proxy() {
+        return this.document.isS3Proxy();
+    }
+
+    public boolean isUseKms() {
+        return this.document.isUseKms();
+    }
+
+    public boolean isKmsProxy() {
+        return this.document.isKmsProxy();
+    }
+
+    public String getKmsEncryptionContextKey() {
+        return this.document.getKmsEncryptionContextKey();
+    }
+
+    public String getKmsEncryptionContextValue() {
+        return this.document.getKmsEncryptionContextValue();
+    }
+
+    public String getProxyHost() {
+        return this.document.getProxyHost();
+    }
+
+    public String getProxyPort() {
+        return this.document.getProxyPort();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends CredentialsDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.AwsBucketBundleCredentialsImpl_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsDescriptor;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.Secret;
+
+/**
+ * One named entry of an {@link AwsBucketBundleCredentialsImpl}, offered as a credential of its own with the id
+ * {@code <bundle id>/<entry name>}. Its password is read through the bundle, so every entry of a bundle shares one
+ * s3 read and kms decrypt.
+ */
+public class AwsBucketBundleEntryCredentials extends BaseStandardCredentials implements AwsBucketCredentials {
+    private static final long serialVersionUID = 1L;
+
+    private final AwsBucketBundleCredentialsImpl bundle;
+    private final String entryName;
+
+    AwsBucketBundleEntryCredentials(AwsBucketBundleCredentialsImpl bundle, String entryName) {
+        super(bundle.getScope(), bundle.getId() + "/" + entryName, bundle.getDescription());
+        this.bundle = bundle;
+        this.entryName = entryName;
+    }
+
+    /**
+     * @return the entry name, so that a username and password binding sets it alongside the value
+     */
+    @NonNull
+    @Override
+    public String getUsername() {
+        return this.entryName;
+    }
+
+    @NonNull
+    @Override
+    public Secret getPassword() {
+        Secret value = this.bundle.getEntries().get(this.entryName);
+        if (null == value) {
+            throw new AwsBucketReadingException("bundle " + this.bundle.getId() + " has no entry " + this.entryName);
+        }
+        return value;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return this.bundle.getDisplayName() + "#" + this.entryName;
+    }
+
+    /**
+     * Entries cannot be created on their own, so they are described as the bundle they belong to.
+     */
+    @NonNull
+    @Override
+    public CredentialsDescriptor getDescriptor() {
+        return this.bundle.getDescriptor();
+    }
+}
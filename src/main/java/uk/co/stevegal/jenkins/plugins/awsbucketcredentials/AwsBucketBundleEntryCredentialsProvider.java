@@ -0,0 +1,47 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.ItemGroup;
+import hudson.security.ACL;
+import org.acegisecurity.Authentication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Offers each declared entry of the bundles in the global credentials store as an
+ * {@link AwsBucketBundleEntryCredentials}, so that a build can bind a single entry of a bundle with the ordinary
+ * bindings. Like the bucket prefix credentials, they are only handed to {@link ACL#SYSTEM}, which is what builds
+ * bind with.
+ */
+@Extension
+public class AwsBucketBundleEntryCredentialsProvider extends CredentialsProvider {
+
+    @NonNull
+    @Override
+    public <C extends Credentials> List<C> getCredentials(@NonNull Class<C> type, @CheckForNull ItemGroup itemGroup,
+                                                          @CheckForNull Authentication authentication) {
+        if (!ACL.SYSTEM.equals(authentication) || !type.isAssignableFrom(AwsBucketBundleEntryCredentials.class)) {
+            return Collections.emptyList();
+        }
+        List<C> credentials = new ArrayList<C>();
+        for (DomainCredentials domain : SystemCredentialsProvider.getInstance().getDomainCredentials()) {
+            for (Credentials stored : domain.getCredentials()) {
+                if (stored instanceof AwsBucketBundleCredentialsImpl) {
+                    AwsBucketBundleCredentialsImpl bundle = (AwsBucketBundleCredentialsImpl) stored;
+                    for (String entryName : bundle.entryNameSet()) {
+                        credentials.add(type.cast(new AwsBucketBundleEntryCredentials(bundle, entryName)));
+                    }
+                }
+            }
+        }
+        return credentials;
+    }
+}
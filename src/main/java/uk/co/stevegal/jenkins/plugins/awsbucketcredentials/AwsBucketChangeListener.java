@@ -0,0 +1,214 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long polls the sqs queue set in {@link AwsBucketCredentialsConfiguration} for s3 event notifications, and drops
+ * the cached secrets read from any object that was created, overwritten or removed. Notifications may be sent to
+ * the queue directly by s3 or through an sns topic. This lets credentials use long cache ttls and still pick up a
+ * rotated secret within seconds.
+ */
+public class AwsBucketChangeListener implements Runnable {
+
+    static final int WAIT_SECONDS = 20;
+    static final int MAX_MESSAGES = 10;
+    static final long ERROR_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketChangeListener.class.getName());
+    private static AwsBucketChangeListener running;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final String settings;
+    private final AwsBucketSecretCache cache;
+    private volatile boolean stopped;
+    private Thread thread;
+
+    /**
+     * @param settings everything the client was built from, so that a change to any of it restarts the listener
+     */
+    AwsBucketChangeListener(AmazonSQS sqs, String queueUrl, String settings, AwsBucketSecretCache cache) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.settings = settings;
+        this.cache = cache;
+    }
+
+    /**
+     * Runs once the global configuration has been loaded, as before then the queue url is not known.
+     */
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void startListening() {
+        reconfigure();
+    }
+
+    /**
+     * Starts, stops or moves the listener to match the global configuration.
+     */
+    public static synchronized void reconfigure() {
+        AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+        String queueUrl = null == configuration ? null : configuration.getInvalidationQueueUrl();
+        String settings = null == configuration ? null : queueUrl + "|" + configuration.getInvalidationQueueRegion()
+                + "|" + configuration.getInvalidationQueueProxyHost() + "|" + configuration.getInvalidationQueueProxyPort();
+        if (null != running && running.settings.equals(settings)) {
+            return;
+        }
+        stopListening();
+        if (null == queueUrl) {
+            return;
+        }
+        LOGGER.info("listening for s3 object changes on " + queueUrl);
+        running = new AwsBucketChangeListener(createClient(configuration.getInvalidationQueueRegion(),
+                configuration.getInvalidationQueueProxyHost(), configuration.getInvalidationQueueProxyPort()),
+                queueUrl, settings, AwsBucketSecretCache.get());
+        running.start();
+    }
+
+    static synchronized boolean isListening() {
+        return null != running;
+    }
+
+    @Terminator
+    public static synchronized void stopListening() {
+        if (null != running) {
+            running.stop();
+            running = null;
+        }
+    }
+
+    void start() {
+        this.thread = new NamingThreadFactory(new DaemonThreadFactory(), "AwsBucketCredentials s3 change listener")
+                .newThread(this);
+        this.thread.start();
+    }
+
+    void stop() {
+        this.stopped = true;
+        if (null != this.thread) {
+            this.thread.interrupt();
+        }
+        this.sqs.shutdown();
+    }
+
+    @Override
+    public void run() {
+        while (!this.stopped) {
+            try {
+                this.poll();
+            } catch (RuntimeException e) {
+                if (this.stopped) {
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "could not receive s3 object changes from " + this.queueUrl, e);
+                try {
+                    Thread.sleep(ERROR_PAUSE_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for one batch of notifications, invalidates the objects they name and deletes them from the queue.
+     * Messages that are not s3 object events are deleted as well so that they are not received again.
+     *
+     * @return how many cached secrets were dropped
+     */
+    int poll() {
+        List<Message> messages = this.sqs.receiveMessage(new ReceiveMessageRequest(this.queueUrl)
+                .withWaitTimeSeconds(WAIT_SECONDS)
+                .withMaxNumberOfMessages(MAX_MESSAGES)).getMessages();
+        int invalidated = 0;
+        for (Message message : messages) {
+            for (ChangedObject changed : changedObjects(message.getBody())) {
+                invalidated += this.cache.invalidateObject(changed.bucketName, changed.key);
+            }
+            this.sqs.deleteMessage(this.queueUrl, message.getReceiptHandle());
+        }
+        return invalidated;
+    }
+
+    /**
+     * @param body an s3 event notification, or an sns notification wrapping one
+     * @return the objects that were created or removed, which is empty for anything else such as the test event
+     * s3 sends when notifications are first set up
+     */
+    static List<ChangedObject> changedObjects(String body) {
+        List<ChangedObject> changed = new ArrayList<ChangedObject>();
+        try {
+            JSONObject json = JSONObject.fromObject(body);
+            if (!json.has("Records") && json.has("Message")) {
+                json = JSONObject.fromObject(json.getString("Message"));
+            }
+            JSONArray records = json.optJSONArray("Records");
+            if (null == records) {
+                return changed;
+            }
+            for (int i = 0; i < records.size(); i++) {
+                JSONObject record = records.getJSONObject(i);
+                String eventName = record.optString("eventName");
+                if (!eventName.startsWith("ObjectCreated") && !eventName.startsWith("ObjectRemoved")) {
+                    continue;
+                }
+                JSONObject s3 = record.getJSONObject("s3");
+                changed.add(new ChangedObject(s3.getJSONObject("bucket").getString("name"),
+                        URLDecoder.decode(s3.getJSONObject("object").getString("key"), "UTF-8")));
+            }
+        } catch (JSONException e) {
+            LOGGER.log(Level.WARNING, "ignoring a message that is not an s3 event notification", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return changed;
+    }
+
+    static AmazonSQS createClient(String region, String proxyHost, int proxyPort) {
+        ClientConfiguration config = new ClientConfiguration();
+        config.setUseTcpKeepAlive(true);
+        if (!Util.fixNull(proxyHost).trim().isEmpty()) {
+            config.setProxyHost(proxyHost);
+            config.setProxyPort(proxyPort);
+        }
+        // the long poll holds the connection open for up to WAIT_SECONDS
+        config.setSocketTimeout((int) TimeUnit.SECONDS.toMillis(WAIT_SECONDS + 10));
+        AmazonSQSClient client = new AmazonSQSClient(AwsCachedCredentialsProvider.get(), config);
+        if (null != region) {
+            client.setRegion(Region.getRegion(Regions.fromName(region)));
+        }
+        return client;
+    }
+
+    static final class ChangedObject {
+        final String bucketName;
+        final String key;
+
+        ChangedObject(String bucketName, String key) {
+            this.bucketName = bucketName;
+            this.key = key;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.credentialsbinding.BindingDescriptor;
 import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
@@ -25,6 +26,7 @@ public class AwsBucketCredentialsBinding extends MultiBinding<AwsBucketCredentia
     public static final String DEFAULT_PASSWORD_VARIABLE = "BUCKET_PASSWORD";
     private String usernameVariable;
     private String passwordVariable;
+    private boolean fetchOnAgent;
 
     /**
      * For use with {@link DataBoundConstructor}.
@@ -49,10 +51,26 @@ public class AwsBucketCredentialsBinding extends MultiBinding<AwsBucketCredentia
         AwsBucketCredentials credentials = this.getCredentials(build);
         Map<String, String> map = new HashMap<String, String>();
         map.put(this.usernameVariable,credentials.getUsername());
-        map.put(this.passwordVariable,credentials.getPassword().getPlainText());
+        if (this.fetchOnAgent && credentials instanceof AwsBucketCredentialsImpl && null != workspace) {
+            map.put(this.passwordVariable, workspace.act(((AwsBucketCredentialsImpl) credentials).agentFetch().plainText()));
+        } else {
+            map.put(this.passwordVariable,AwsBucketCredentialsPrefetcher.passwordFor(build, credentials).getPlainText());
+        }
         return new MultiEnvironment(map);
     }
 
+    /**
+     * @param fetchOnAgent read s3 and decrypt on the build agent, using its aws identity, instead of on the controller
+     */
+    @DataBoundSetter
+    public void setFetchOnAgent(boolean fetchOnAgent) {
+        this.fetchOnAgent = fetchOnAgent;
+    }
+
+    public boolean isFetchOnAgent() {
+        return fetchOnAgent;
+    }
+
     public String getUsernameVariable() {
         return usernameVariable;
     }
@@ -0,0 +1,146 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.Extension;
+import hudson.Util;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Settings shared by every AWS bucket credential, found under Manage Jenkins » Configure System.
+ */
+@Extension
+public class AwsBucketCredentialsConfiguration extends GlobalConfiguration {
+
+    private int kmsRequestsPerSecond;
+    private int kmsMaxConcurrentRequests;
+    private String invalidationQueueUrl;
+    private String invalidationQueueRegion;
+    private String invalidationQueueProxyHost;
+    private int invalidationQueueProxyPort;
+    private List<AwsBucketPrefix> prefixes;
+
+    public AwsBucketCredentialsConfiguration() {
+        load();
+    }
+
+    /**
+     * @return the configuration, or null when running without jenkins, e.g. on an agent
+     */
+    public static AwsBucketCredentialsConfiguration get() {
+        if (null == Jenkins.getInstance()) {
+            return null;
+        }
+        return GlobalConfiguration.all().get(AwsBucketCredentialsConfiguration.class);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.AwsBucketCredentialsConfiguration_DisplayName();
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        // an empty repeatable list is left out of the form, which would otherwise keep the old prefixes
+        this.prefixes = null;
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    /**
+     * Also moves the invalidation listener to the saved queue, however the settings were changed.
+     */
+    @Override
+    public synchronized void save() {
+        super.save();
+        AwsBucketChangeListener.reconfigure();
+    }
+
+    /**
+     * @return the most kms decrypt requests each region may make per second, or 0 for no limit
+     */
+    public int getKmsRequestsPerSecond() {
+        return kmsRequestsPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setKmsRequestsPerSecond(int kmsRequestsPerSecond) {
+        this.kmsRequestsPerSecond = Math.max(kmsRequestsPerSecond, 0);
+    }
+
+    /**
+     * @return the most kms decrypt requests each region may have in flight at once, or 0 for no limit
+     */
+    public int getKmsMaxConcurrentRequests() {
+        return kmsMaxConcurrentRequests;
+    }
+
+    @DataBoundSetter
+    public void setKmsMaxConcurrentRequests(int kmsMaxConcurrentRequests) {
+        this.kmsMaxConcurrentRequests = Math.max(kmsMaxConcurrentRequests, 0);
+    }
+
+    /**
+     * @return the url of the sqs queue that s3 object change notifications are sent to, or null to not listen
+     */
+    public String getInvalidationQueueUrl() {
+        return invalidationQueueUrl;
+    }
+
+    @DataBoundSetter
+    public void setInvalidationQueueUrl(String invalidationQueueUrl) {
+        this.invalidationQueueUrl = Util.fixEmptyAndTrim(invalidationQueueUrl);
+    }
+
+    /**
+     * @return the region of the invalidation queue
+     */
+    public String getInvalidationQueueRegion() {
+        return invalidationQueueRegion;
+    }
+
+    @DataBoundSetter
+    public void setInvalidationQueueRegion(String invalidationQueueRegion) {
+        this.invalidationQueueRegion = Util.fixEmptyAndTrim(invalidationQueueRegion);
+    }
+
+    /**
+     * @return the proxy host the invalidation queue is polled through, or null to connect directly
+     */
+    public String getInvalidationQueueProxyHost() {
+        return invalidationQueueProxyHost;
+    }
+
+    @DataBoundSetter
+    public void setInvalidationQueueProxyHost(String invalidationQueueProxyHost) {
+        this.invalidationQueueProxyHost = Util.fixEmptyAndTrim(invalidationQueueProxyHost);
+    }
+
+    public int getInvalidationQueueProxyPort() {
+        return invalidationQueueProxyPort;
+    }
+
+    @DataBoundSetter
+    public void setInvalidationQueueProxyPort(int invalidationQueueProxyPort) {
+        this.invalidationQueueProxyPort = invalidationQueueProxyPort;
+    }
+
+    /**
+     * @return the bucket prefixes whose objects are offered as credentials
+     */
+    public List<AwsBucketPrefix> getPrefixes() {
+        return null == prefixes ? Collections.<AwsBucketPrefix>emptyList() : Collections.unmodifiableList(prefixes);
+    }
+
+    @DataBoundSetter
+    public void setPrefixes(List<AwsBucketPrefix> prefixes) {
+        this.prefixes = null == prefixes ? null : new ArrayList<AwsBucketPrefix>(prefixes);
+    }
+}
@@ -0,0 +1,141 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.credentialsbinding.BindingDescriptor;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Binds the password of an AwsBucketCredentials to a file only the build user can read, for secrets that are too
+ * large for environment variables. The file is written next to the workspace, not in it, and deleted when the
+ * binding ends.
+ */
+public class AwsBucketCredentialsFileBinding extends MultiBinding<AwsBucketCredentials> {
+
+    public static final String DEFAULT_USERNAME_VARIABLE = "BUCKET_USER_NAME";
+    public static final String DEFAULT_FILE_VARIABLE = "BUCKET_PASSWORD_FILE";
+    static final String SECRETS_DIRECTORY = "awsBucketSecretFiles";
+
+    private String usernameVariable;
+    private String fileVariable;
+    private boolean fetchOnAgent;
+
+    @DataBoundConstructor
+    public AwsBucketCredentialsFileBinding(@Nullable String usernameVariable, @Nullable String fileVariable,
+                                           String credentialsId) {
+        super(credentialsId);
+        this.usernameVariable = StringUtils.defaultIfBlank(usernameVariable, DEFAULT_USERNAME_VARIABLE);
+        this.fileVariable = StringUtils.defaultIfBlank(fileVariable, DEFAULT_FILE_VARIABLE);
+    }
+
+    @Override
+    protected Class<AwsBucketCredentials> type() {
+        return AwsBucketCredentials.class;
+    }
+
+    @Override
+    public MultiEnvironment bind(@Nonnull Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+        AwsBucketCredentials credentials = this.getCredentials(build);
+        String dirName = UUID.randomUUID().toString();
+        FilePath secrets = secretsDir(workspace).child(dirName);
+        secrets.mkdirs();
+        secrets.chmod(0700);
+        FilePath file = secrets.child("secret");
+        file.touch(System.currentTimeMillis());
+        file.chmod(0600);
+        if (this.fetchOnAgent && credentials instanceof AwsBucketCredentialsImpl) {
+            file.act(((AwsBucketCredentialsImpl) credentials).agentFetch().toFile());
+        } else {
+            byte[] content = AwsBucketCredentialsPrefetcher.passwordFor(build, credentials).getPlainText().getBytes("UTF-8");
+            OutputStream out = file.write();
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+                Arrays.fill(content, (byte) 0);
+            }
+        }
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(this.usernameVariable, credentials.getUsername());
+        map.put(this.fileVariable, file.getRemote());
+        return new MultiEnvironment(map, new UnbinderImpl(dirName));
+    }
+
+    /**
+     * @param fetchOnAgent read s3 and decrypt on the build agent, using its aws identity, instead of on the controller
+     */
+    @DataBoundSetter
+    public void setFetchOnAgent(boolean fetchOnAgent) {
+        this.fetchOnAgent = fetchOnAgent;
+    }
+
+    public boolean isFetchOnAgent() {
+        return fetchOnAgent;
+    }
+
+    public String getUsernameVariable() {
+        return usernameVariable;
+    }
+
+    public String getFileVariable() {
+        return fileVariable;
+    }
+
+    @Override
+    public Set<String> variables() {
+        Set<String> variables = new HashSet<String>();
+        variables.add(this.usernameVariable);
+        variables.add(this.fileVariable);
+        return variables;
+    }
+
+    static FilePath secretsDir(FilePath workspace) {
+        return workspace.sibling(workspace.getName() + "@tmp").child(SECRETS_DIRECTORY);
+    }
+
+    private static final class UnbinderImpl implements Unbinder {
+        private static final long serialVersionUID = 1L;
+
+        private final String dirName;
+
+        UnbinderImpl(String dirName) {
+            this.dirName = dirName;
+        }
+
+        @Override
+        public void unbind(@Nonnull Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+            secretsDir(workspace).child(this.dirName).deleteRecursive();
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BindingDescriptor<AwsBucketCredentials> {
+
+        @Override
+        protected Class<AwsBucketCredentials> type() {
+            return AwsBucketCredentials.class;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Aws Bucket credentials (file)";
+        }
+    }
+}
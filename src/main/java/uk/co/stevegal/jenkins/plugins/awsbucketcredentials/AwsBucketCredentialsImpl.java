@@ -3,22 +3,30 @@ package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
 import com.amazonaws.services.kms.model.DecryptRequest;
 import com.amazonaws.services.kms.model.DecryptResult;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.cloudbees.plugins.credentials.CredentialsDescriptor;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
+import hudson.Util;
 import hudson.util.Secret;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 
@@ -42,9 +50,13 @@ public class AwsBucketCredentialsImpl extends BaseStandardCredentials implements
     private String proxyHost;
     private String proxyPort;
     private boolean useKms;
-
+    private int cacheTtlSeconds;
+    private String roleArn;
+    private String externalId;
+    private String versionId;
 
     private static final Logger LOGGER = Logger.getLogger(AwsBucketCredentialsImpl.class.getName());
+    private static final AwsSingleFlight<DecryptedObject> FETCHES = new AwsSingleFlight<DecryptedObject>();
 
     @DataBoundConstructor
     public AwsBucketCredentialsImpl(@CheckForNull CredentialsScope scope, @CheckForNull String id, @CheckForNull String region,
@@ -80,6 +92,63 @@ public class AwsBucketCredentialsImpl extends BaseStandardCredentials implements
         }
     }
 
+    /**
+     * @param cacheTtlSeconds how long the decrypted secret may be served from memory. It is refreshed in the
+     *                        background shortly before then, and for one more ttl after expiry the old value is
+     *                        served while a refresh runs. 0 or less means s3 is asked on every read, although an
+     *                        unchanged object is still not decrypted again. To allow that, the decrypted secret of
+     *                        an object with an etag stays in memory until the object changes or it is evicted.
+     */
+    @DataBoundSetter
+    public void setCacheTtlSeconds(int cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    public int getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    /**
+     * @param roleArn an iam role to read the bucket and decrypt through, instead of the controller's own identity
+     */
+    @DataBoundSetter
+    public void setRoleArn(String roleArn) {
+        this.roleArn = Util.fixEmptyAndTrim(roleArn);
+        this.amazonS3ClientBuilder.roleArn(this.roleArn);
+        this.amazonKmsClientBuilder.roleArn(this.roleArn);
+    }
+
+    public String getRoleArn() {
+        return roleArn;
+    }
+
+    /**
+     * @param externalId the external id the role's trust policy asks for, if any
+     */
+    @DataBoundSetter
+    public void setExternalId(String externalId) {
+        this.externalId = Util.fixEmptyAndTrim(externalId);
+        this.amazonS3ClientBuilder.externalId(this.externalId);
+        this.amazonKmsClientBuilder.externalId(this.externalId);
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    /**
+     * @param versionId the s3 object version to read. A version never changes, so once it has been decrypted it is
+     *                  served from memory without asking s3 or kms again, whatever the cache ttl
+     */
+    @DataBoundSetter
+    public void setVersionId(String versionId) {
+        this.versionId = Util.fixEmptyAndTrim(versionId);
+    }
+
+    public String getVersionId() {
+        return versionId;
+    }
+
     public boolean isUseKms() {
         return useKms;
     }
@@ -108,26 +177,273 @@ public class AwsBucketCredentialsImpl extends BaseStandardCredentials implements
     @NonNull
     @Override
     public Secret getPassword() {
-        byte[] encryptedString = this.readS3BucketContents();
-        String rawString = this.decryptString(encryptedString);
-        return Secret.fromString(rawString);
+        String cacheKey = this.cacheKey();
+        long generation = this.generation();
+        AwsBucketSecretCache.Entry cached = AwsBucketSecretCache.get().lookup(cacheKey);
+        if (this.isServable(cacheKey, cached)) {
+            return cached.getSecret();
+        }
+        return this.load(cacheKey, cached, generation);
+    }
+
+    /**
+     * Reads s3 on {@link AwsBucketExecutors#s3()} and then decrypts on {@link AwsBucketExecutors#kms()}, so the
+     * caller is never blocked and reads of other credentials can overlap this one's decrypt.
+     * A cached secret is returned as an already completed future, and a read of the same object that is already
+     * under way, blocking or not, is joined rather than repeated.
+     */
+    @NonNull
+    public ListenableFuture<Secret> getPasswordAsync() {
+        final String cacheKey = this.cacheKey();
+        final long generation = this.generation();
+        final AwsBucketSecretCache.Entry cached = AwsBucketSecretCache.get().lookup(cacheKey);
+        if (this.isServable(cacheKey, cached)) {
+            return Futures.immediateFuture(cached.getSecret());
+        }
+        final String eTag = null == cached ? null : cached.getETag();
+        ListenableFuture<DecryptedObject> decrypted = FETCHES.executeAsync(this.fetchKey(eTag, generation),
+                new Callable<ListenableFuture<DecryptedObject>>() {
+                    @Override
+                    public ListenableFuture<DecryptedObject> call() {
+                        return readAndDecryptAsync(cacheKey, eTag);
+                    }
+                });
+        return Futures.transform(decrypted, new Function<DecryptedObject, Secret>() {
+            @Override
+            public Secret apply(DecryptedObject decryptedObject) {
+                return store(cacheKey, cached, decryptedObject, generation);
+            }
+        });
+    }
+
+    private ListenableFuture<DecryptedObject> readAndDecryptAsync(final String cacheKey, final String eTag) {
+        ListenableFuture<AwsBucketObject> read = AwsBucketExecutors.s3().submit(new Callable<AwsBucketObject>() {
+            @Override
+            public AwsBucketObject call() {
+                return read(cacheKey, eTag);
+            }
+        });
+        return Futures.transform(read,
+                new AsyncFunction<AwsBucketObject, DecryptedObject>() {
+                    @Override
+                    public ListenableFuture<DecryptedObject> apply(final AwsBucketObject bucketObject) {
+                        if (null == bucketObject || !useKms) {
+                            return Futures.immediateFuture(decrypt(bucketObject));
+                        }
+                        return AwsBucketExecutors.kms().submit(new Callable<DecryptedObject>() {
+                            @Override
+                            public DecryptedObject call() {
+                                return decrypt(bucketObject);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * @return true if the cached entry can be used, in which case it is refreshed in the background if it is
+     * close to expiry
+     */
+    private boolean isServable(final String cacheKey, AwsBucketSecretCache.Entry cached) {
+        if (null != cached && null != this.versionId) {
+            AwsBucketMetrics.cacheHit(this.region);
+            return true;
+        }
+        if (null != cached && this.cacheTtlSeconds > 0 && cached.isServableWhileRefreshing()) {
+            AwsBucketMetrics.cacheHit(this.region);
+            if (cached.isDueForRefresh()) {
+                LOGGER.fine("refreshing cached secret ahead of expiry");
+                AwsBucketSecretRefresher.get().refreshAhead(cacheKey, new Runnable() {
+                    @Override
+                    public void run() {
+                        long generation = generation();
+                        load(cacheKey, AwsBucketSecretCache.get().lookup(cacheKey), generation);
+                    }
+                });
+            }
+            return true;
+        }
+        AwsBucketMetrics.cacheMiss(this.region);
+        return false;
+    }
+
+    /**
+     * @param generation the object's generation from before the cache was looked up
+     */
+    private Secret load(final String cacheKey, AwsBucketSecretCache.Entry cached, long generation) {
+        final String eTag = null == cached ? null : cached.getETag();
+        DecryptedObject decrypted = FETCHES.execute(this.fetchKey(eTag, generation), new Callable<DecryptedObject>() {
+            @Override
+            public DecryptedObject call() {
+                return decrypt(read(cacheKey, eTag));
+            }
+        });
+        return this.store(cacheKey, cached, decrypted, generation);
+    }
+
+    /**
+     * Caches the result of a read, unless a change notification for the object arrived while it was being read.
+     *
+     * @param decrypted the newly decrypted object, or null if the cached copy was still current
+     */
+    private Secret store(String cacheKey, AwsBucketSecretCache.Entry cached, DecryptedObject decrypted,
+                         long generation) {
+        if (null == decrypted) {
+            LOGGER.fine("s3 object not modified. reusing decrypted secret");
+            decrypted = new DecryptedObject(cached.getSecret(), cached.getETag(), cached.getVersionId());
+        }
+        if (this.cacheTtlSeconds > 0 || null != decrypted.eTag || null != this.versionId) {
+            AwsBucketSecretCache.get().put(cacheKey, this.getId(), this.bucketName, this.bucketPath, decrypted.secret,
+                    decrypted.eTag, decrypted.versionId, TimeUnit.SECONDS.toMillis(Math.max(this.cacheTtlSeconds, 0)),
+                    generation);
+        }
+        return decrypted.secret;
+    }
+
+    /**
+     * @return what a build agent needs to read this credential itself
+     */
+    public AwsBucketAgentFetch agentFetch() {
+        return new AwsBucketAgentFetch(this.getId(), this.region, this.bucketName, this.bucketPath, this.useKms,
+                this.kmsEncryptionContextKey, this.kmsEncryptionContextValue, this.s3Proxy, this.kmsProxy,
+                this.proxyHost, this.proxyPort, this.roleArn, this.externalId, this.versionId);
+    }
+
+    /**
+     * Reads and decrypts without touching the caches or {@link Secret}, neither of which are available on an agent.
+     */
+    String readPlainText() {
+        byte[] content = this.readS3BucketContents(null).getContent();
+        try {
+            return this.decryptString(content);
+        } finally {
+            if (!this.useKms) {
+                Arrays.fill(content, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Reads the bucket object, falling back to the copy in {@link AwsBucketDiskCache} when nothing is cached in
+     * memory and s3 says that copy is still current, or without asking s3 at all when a version is pinned.
+     *
+     * @param eTag the etag of the secret cached in memory, if any
+     * @return the object, or null if the secret cached in memory is still current
+     */
+    private AwsBucketObject read(String cacheKey, String eTag) {
+        AwsBucketObject persisted = null;
+        if (null == eTag && this.useKms) {
+            persisted = AwsBucketDiskCache.get().lookup(cacheKey);
+            eTag = null == persisted ? null : persisted.getETag();
+            if (null != persisted && null != this.versionId) {
+                LOGGER.fine("pinned s3 object version cached on disk. not asking s3");
+                return persisted;
+            }
+        }
+        AwsBucketObject bucketObject = this.readS3BucketContents(eTag);
+        if (null == bucketObject) {
+            if (null != persisted) {
+                LOGGER.fine("s3 object not modified. decrypting copy cached on disk");
+            }
+            return persisted;
+        }
+        if (this.useKms) {
+            AwsBucketDiskCache.get().store(cacheKey, bucketObject);
+        }
+        return bucketObject;
+    }
+
+    /**
+     * @return the decrypted object, or null if there was no new object to decrypt
+     */
+    private DecryptedObject decrypt(AwsBucketObject bucketObject) {
+        if (null == bucketObject) {
+            return null;
+        }
+        Secret secret;
+        try {
+            secret = Secret.fromString(this.decryptString(bucketObject.getContent()));
+        } finally {
+            if (!this.useKms) {
+                // without kms the object content is the secret itself
+                Arrays.fill(bucketObject.getContent(), (byte) 0);
+            }
+        }
+        return new DecryptedObject(secret, bucketObject.getETag(), bucketObject.getVersionId());
+    }
+
+    /**
+     * Identifies a read of the same object, decrypted the same way and by the same aws identity, regardless of
+     * which credential asks for it. Credentials reading through different roles never share a result, since
+     * one role being allowed to read the object says nothing about the other.
+     */
+    private String fetchKey(String eTag, long generation) {
+        return this.region + "|" + this.identity() + "|" + this.bucketName + "|" + this.bucketPath + "|" + this.useKms + "|"
+                + this.kmsEncryptionContextKey + "=" + this.kmsEncryptionContextValue + "|" + this.versionId + "|" + eTag
+                + "|" + generation;
+    }
+
+    /**
+     * @return the object's generation. Reads that start after a change notification get a fresh key, so they
+     * never join a read that began before the change.
+     */
+    private long generation() {
+        return AwsBucketSecretCache.get().generation(this.bucketName, this.bucketPath);
+    }
+
+    /**
+     * @return the aws identity that s3 and kms are called with
+     */
+    private String identity() {
+        return this.roleArn + "|" + this.externalId;
+    }
+
+    /**
+     * Covers every setting that changes which secret is read, so a credential that has been edited simply misses
+     * whatever was cached for it before.
+     */
+    private String cacheKey() {
+        return this.getId() + "|" + this.region + "|" + this.identity() + "|" + this.bucketName + "|" + this.bucketPath
+                + "|" + this.versionId + "|" + this.useKms + "|" + this.kmsEncryptionContextKey + "="
+                + this.kmsEncryptionContextValue;
     }
 
-    private byte[] readS3BucketContents() {
+    /**
+     * @param eTag the etag of the copy we already hold, if any
+     * @return the object, or null if it still matches the etag we hold
+     */
+    private AwsBucketObject readS3BucketContents(String eTag) {
         LOGGER.fine("reading s3 bucket");
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        S3Object s3Object = this.amazonS3ClientBuilder.build().getObject(new GetObjectRequest(this.bucketName, this.bucketPath));
+        GetObjectRequest request = new GetObjectRequest(this.bucketName, this.bucketPath, this.versionId);
+        if (null != eTag) {
+            request.setNonmatchingETagConstraints(Collections.singletonList(eTag));
+        }
+        AwsCircuitBreaker breaker = AwsCircuitBreaker.forService("s3", this.region);
+        breaker.before();
+        AwsBucketMetrics.Sample sample = AwsBucketMetrics.start(AwsBucketMetrics.S3_GET, this.region);
+        S3Object s3Object;
+        try {
+            s3Object = this.amazonS3ClientBuilder.build().getObject(request);
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            breaker.failure(e);
+            throw e;
+        }
+        if (null == s3Object) {
+            sample.success();
+            breaker.success();
+            return null;
+        }
+        ObjectMetadata metadata = s3Object.getObjectMetadata();
+        byte[] content;
         try {
             LOGGER.fine("getting s3 bucket contents");
-            S3ObjectInputStream objectContent = s3Object.getObjectContent();
-            byte[] buffer = new byte[1024]; // 1k buffer
-            int read=0;
-            while ((read= objectContent.read(buffer,0,buffer.length))!=-1) {
-                baos.write(buffer,0,read);
-            }
-            baos.flush();
+            content = AwsBucketObjectReader.read(s3Object.getObjectContent(),
+                    null == metadata ? -1 : metadata.getContentLength(), AwsBucketObjectReader.maxObjectBytes());
         } catch (IOException e) {
             LOGGER.severe("IOException "+e.getMessage());
+            sample.failure(e);
+            breaker.failure(e);
             throw new AwsBucketReadingException(e);
         } finally {
             try {
@@ -137,28 +453,88 @@ public class AwsBucketCredentialsImpl extends BaseStandardCredentials implements
             }
         }
         LOGGER.fine("read contents");
-        return baos.toByteArray();
+        sample.success();
+        breaker.success();
+        AwsBucketMetrics.bytesRead(this.region, content.length);
+        if (null == metadata) {
+            return new AwsBucketObject(content, null, null);
+        }
+        return new AwsBucketObject(content, metadata.getETag(), metadata.getVersionId());
     }
 
     private String decryptString(byte[] encryptedString) {
         ByteBuffer decryptByteBuffer=null;
-        if (useKms){
-            DecryptRequest request = new DecryptRequest();
-            LOGGER.fine("decrypting with kms");
-            if (null != this.kmsEncryptionContextValue && !this.kmsEncryptionContextValue.isEmpty()
-                && null != this.kmsEncryptionContextKey && !this.kmsEncryptionContextKey.isEmpty()) {
-                LOGGER.info("decrypting with context");
-                request.addEncryptionContextEntry(this.kmsEncryptionContextKey, this.kmsEncryptionContextValue);
-            }
-            request.setCiphertextBlob(ByteBuffer.wrap(encryptedString));
-            DecryptResult decryptResult = this.amazonKmsClientBuilder.build().decrypt(request);
-            decryptByteBuffer = decryptResult.getPlaintext();
-            LOGGER.fine("decrypted with kms");
+        byte[] plaintext = null;
+        if (useKms && AwsEnvelope.isEnvelope(encryptedString)) {
+            LOGGER.fine("decrypting envelope");
+            plaintext = AwsDataKeyCache.get().decrypt(AwsEnvelope.parse(encryptedString),
+                    this.region + "|" + this.identity() + "|" + this.kmsEncryptionContextKey + "="
+                            + this.kmsEncryptionContextValue,
+                    new AwsDataKeyCache.DataKeyDecrypter() {
+                        @Override
+                        public byte[] decrypt(byte[] encryptedDataKey) {
+                            ByteBuffer dataKey = kmsDecrypt(encryptedDataKey);
+                            byte[] bytes = new byte[dataKey.remaining()];
+                            dataKey.get(bytes);
+                            if (dataKey.hasArray()) {
+                                Arrays.fill(dataKey.array(), (byte) 0);
+                            }
+                            return bytes;
+                        }
+                    });
+            decryptByteBuffer = ByteBuffer.wrap(plaintext);
+        } else if (useKms){
+            decryptByteBuffer = this.kmsDecrypt(encryptedString);
+            plaintext = decryptByteBuffer.hasArray() ? decryptByteBuffer.array() : null;
         } else {
             LOGGER.fine("no kms secret specified. Assume SSE");
             decryptByteBuffer =ByteBuffer.wrap(encryptedString);
         }
-        return Charset.forName("UTF-8").decode(decryptByteBuffer).toString();
+        try {
+            return AwsPlaintext.decode(decryptByteBuffer);
+        } finally {
+            if (null != plaintext) {
+                Arrays.fill(plaintext, (byte) 0);
+            }
+        }
+    }
+
+    private ByteBuffer kmsDecrypt(byte[] ciphertext) {
+        DecryptRequest request = new DecryptRequest();
+        LOGGER.fine("decrypting with kms");
+        if (null != this.kmsEncryptionContextValue && !this.kmsEncryptionContextValue.isEmpty()
+            && null != this.kmsEncryptionContextKey && !this.kmsEncryptionContextKey.isEmpty()) {
+            LOGGER.info("decrypting with context");
+            request.addEncryptionContextEntry(this.kmsEncryptionContextKey, this.kmsEncryptionContextValue);
+        }
+        request.setCiphertextBlob(ByteBuffer.wrap(ciphertext));
+        // the permit is taken first so that a caller interrupted while queueing never holds the breaker's trial call
+        AwsKmsLimiter.Permit permit;
+        try {
+            permit = AwsKmsLimiter.forRegion(this.region).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AwsBucketReadingException(e);
+        }
+        DecryptResult decryptResult;
+        try {
+            AwsCircuitBreaker breaker = AwsCircuitBreaker.forService("kms", this.region);
+            breaker.before();
+            AwsBucketMetrics.Sample sample = AwsBucketMetrics.start(AwsBucketMetrics.KMS_DECRYPT, this.region);
+            try {
+                decryptResult = this.amazonKmsClientBuilder.build().decrypt(request);
+            } catch (RuntimeException e) {
+                sample.failure(e);
+                breaker.failure(e);
+                throw e;
+            }
+            sample.success();
+            breaker.success();
+        } finally {
+            permit.release();
+        }
+        LOGGER.fine("decrypted with kms");
+        return decryptResult.getPlaintext();
     }
 
     @NonNull
@@ -187,6 +563,18 @@ public class AwsBucketCredentialsImpl extends BaseStandardCredentials implements
         return region;
     }
 
+    private static final class DecryptedObject {
+        private final Secret secret;
+        private final String eTag;
+        private final String versionId;
+
+        DecryptedObject(Secret secret, String eTag, String versionId) {
+            this.secret = secret;
+            this.eTag = eTag;
+            this.versionId = versionId;
+        }
+    }
+
     @Extension
     public static class DescriptorImpl extends CredentialsDescriptor {
 
@@ -0,0 +1,65 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.JobProperty;
+import hudson.model.JobPropertyDescriptor;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Marks a job whose builds should fetch and decrypt their bucket credentials in parallel as soon as they start,
+ * so that later bindings do not wait on s3 and kms one after another.
+ */
+public class AwsBucketCredentialsPrefetchProperty extends JobProperty<Job<?, ?>> {
+
+    private final String credentialIds;
+
+    /**
+     * @param credentialIds whitespace or comma separated ids to prefetch. When blank nothing is prefetched, as
+     *                      fetching every bucket credential the job can see could mean thousands of reads.
+     */
+    @DataBoundConstructor
+    public AwsBucketCredentialsPrefetchProperty(String credentialIds) {
+        this.credentialIds = Util.fixEmptyAndTrim(credentialIds);
+    }
+
+    public String getCredentialIds() {
+        return credentialIds;
+    }
+
+    public List<String> credentialIdList() {
+        List<String> ids = new ArrayList<String>();
+        for (String id : Util.fixNull(this.credentialIds).split("[\\s,]+")) {
+            if (!id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends JobPropertyDescriptor {
+
+        @Override
+        public boolean isApplicable(Class<? extends Job> jobType) {
+            return true;
+        }
+
+        @Override
+        public JobProperty<?> newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+            JSONObject prefetch = formData.optJSONObject("prefetchAwsBucketCredentials");
+            return null == prefetch ? null : req.bindJSON(AwsBucketCredentialsPrefetchProperty.class, prefetch);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.AwsBucketCredentialsPrefetchProperty_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.Secret;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts fetching the bucket credentials of a job with {@link AwsBucketCredentialsPrefetchProperty} as one
+ * pipelined batch when one of its builds starts. Only the ids listed in the property are fetched. The results are
+ * only held for the lifetime of the build, and only handed to the same credential instance that was fetched, so a
+ * credential with the same id from another store or folder is read on its own.
+ */
+@Extension
+public class AwsBucketCredentialsPrefetcher extends RunListener<Run<?, ?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketCredentialsPrefetcher.class.getName());
+    private static final Map<Run<?, ?>, Map<AwsBucketCredentials, Future<Secret>>> PREFETCHED =
+            Collections.synchronizedMap(new WeakHashMap<Run<?, ?>, Map<AwsBucketCredentials, Future<Secret>>>());
+
+    @Override
+    public void onStarted(Run<?, ?> run, TaskListener listener) {
+        AwsBucketCredentialsPrefetchProperty property = run.getParent().getProperty(AwsBucketCredentialsPrefetchProperty.class);
+        if (null == property) {
+            return;
+        }
+        List<AwsBucketCredentials> credentials = this.credentialsFor(run, property);
+        listener.getLogger().println("Prefetching " + credentials.size() + " AWS bucket credentials");
+        prefetch(run, credentials);
+    }
+
+    static void prefetch(Run<?, ?> run, List<AwsBucketCredentials> credentials) {
+        Map<AwsBucketCredentials, Future<Secret>> futures = new IdentityHashMap<AwsBucketCredentials, Future<Secret>>();
+        for (AwsBucketCredentials credential : credentials) {
+            futures.put(credential, AwsBucketExecutors.getPasswordAsync(credential));
+        }
+        PREFETCHED.put(run, futures);
+    }
+
+    @Override
+    public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+        PREFETCHED.remove(run);
+    }
+
+    /**
+     * @return the password prefetched for this build, or a freshly read one if it was not prefetched or the
+     * prefetch failed.
+     */
+    public static Secret passwordFor(Run<?, ?> run, AwsBucketCredentials credentials) throws InterruptedException {
+        Map<AwsBucketCredentials, Future<Secret>> futures = PREFETCHED.get(run);
+        Future<Secret> future = null == futures ? null : futures.get(credentials);
+        if (null != future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.FINE, "prefetch of " + credentials.getId() + " failed, reading it again", e.getCause());
+            }
+        }
+        return credentials.getPassword();
+    }
+
+    private List<AwsBucketCredentials> credentialsFor(Run<?, ?> run, AwsBucketCredentialsPrefetchProperty property) {
+        List<String> ids = property.credentialIdList();
+        List<AwsBucketCredentials> credentials = new ArrayList<AwsBucketCredentials>();
+        for (String id : ids) {
+            AwsBucketCredentials credential = CredentialsProvider.findCredentialById(id, AwsBucketCredentials.class, run);
+            if (null != credential) {
+                credentials.add(credential);
+            }
+        }
+        return credentials;
+    }
+}
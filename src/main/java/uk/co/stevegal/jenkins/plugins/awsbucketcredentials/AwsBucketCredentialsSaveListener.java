@@ -0,0 +1,54 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainCredentials;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Drops the cached secrets of bucket credentials that were removed from, or replaced in, the global credentials
+ * store. An edited credential already misses its old entries as its cache key changes, but without this those
+ * entries, and those of deleted credentials, would stay in memory until they were evicted.
+ */
+@Extension
+public class AwsBucketCredentialsSaveListener extends SaveableListener {
+
+    private Map<String, AwsBucketCredentials> stored = new HashMap<String, AwsBucketCredentials>();
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof SystemCredentialsProvider) {
+            this.changed(stored((SystemCredentialsProvider) o), AwsBucketSecretCache.get());
+        }
+    }
+
+    /**
+     * @param current the bucket credentials now stored, by id
+     */
+    synchronized void changed(Map<String, AwsBucketCredentials> current, AwsBucketSecretCache cache) {
+        for (Map.Entry<String, AwsBucketCredentials> previous : this.stored.entrySet()) {
+            if (current.get(previous.getKey()) != previous.getValue()) {
+                cache.invalidate(previous.getKey());
+            }
+        }
+        this.stored = current;
+    }
+
+    private static Map<String, AwsBucketCredentials> stored(SystemCredentialsProvider provider) {
+        Map<String, AwsBucketCredentials> stored = new HashMap<String, AwsBucketCredentials>();
+        for (DomainCredentials domain : provider.getDomainCredentials()) {
+            for (Credentials credentials : domain.getCredentials()) {
+                if (credentials instanceof AwsBucketCredentials) {
+                    stored.put(((AwsBucketCredentials) credentials).getId(), (AwsBucketCredentials) credentials);
+                }
+            }
+        }
+        return stored;
+    }
+}
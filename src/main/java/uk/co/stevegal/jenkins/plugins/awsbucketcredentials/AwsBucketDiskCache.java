@@ -0,0 +1,199 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.PeriodicWork;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the still kms encrypted contents of bucket objects under JENKINS_HOME so that after a restart the
+ * first read of a credential only has to ask s3 whether the object changed. Plaintext is never written, which is
+ * why only credentials that use kms are stored. Off unless the enabled system property is set. Files that have not
+ * been read or written for the max age, such as those of credentials that were edited or deleted, are removed.
+ */
+public class AwsBucketDiskCache {
+
+    static final String ENABLED_PROPERTY = AwsBucketDiskCache.class.getName() + ".enabled";
+    static final String MAX_AGE_DAYS_PROPERTY = AwsBucketDiskCache.class.getName() + ".maxAgeDays";
+    static final long DEFAULT_MAX_AGE_DAYS = 7;
+    static final String DIRECTORY_NAME = "aws-bucket-credentials-cache";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketDiskCache.class.getName());
+    private static final AwsBucketDiskCache DISABLED = new AwsBucketDiskCache(null);
+
+    private final File directory;
+
+    AwsBucketDiskCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static AwsBucketDiskCache get() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (!Boolean.getBoolean(ENABLED_PROPERTY) || null == jenkins) {
+            return DISABLED;
+        }
+        return new AwsBucketDiskCache(new File(jenkins.getRootDir(), DIRECTORY_NAME));
+    }
+
+    /**
+     * @return the stored object, or null if there is none or it could not be read
+     */
+    public AwsBucketObject lookup(String key) {
+        File file = this.fileFor(key);
+        if (null == file || !file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("unknown format");
+            }
+            String eTag = in.readUTF();
+            String versionId = Util.fixEmpty(in.readUTF());
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            // marks the file as still in use, so it is not removed as stale
+            file.setLastModified(System.currentTimeMillis());
+            return new AwsBucketObject(content, eTag, versionId);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "ignoring unreadable cached object " + file, e);
+            this.delete(file);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the ciphertext of a kms encrypted object. Objects without an etag are skipped as they can never be
+     * checked for changes.
+     */
+    public void store(String key, AwsBucketObject bucketObject) {
+        File file = this.fileFor(key);
+        if (null == file || null == bucketObject.getETag()) {
+            return;
+        }
+        File temp = null;
+        DataOutputStream out = null;
+        try {
+            if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+                throw new IOException("could not create " + this.directory);
+            }
+            ownerOnly(this.directory);
+            // a name of its own, so that concurrent stores of the same key never write to the same file
+            temp = File.createTempFile(file.getName(), ".tmp", this.directory);
+            ownerOnly(temp);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(bucketObject.getETag());
+            out.writeUTF(Util.fixNull(bucketObject.getVersionId()));
+            out.writeInt(bucketObject.getContent().length);
+            out.write(bucketObject.getContent());
+            out.close();
+            out = null;
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("could not replace " + file);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "could not cache object on disk", e);
+        } finally {
+            closeQuietly(out);
+            if (null != temp) {
+                this.delete(temp);
+            }
+        }
+    }
+
+    /**
+     * @return how many files were removed because they had not been read or written since the cutoff
+     */
+    public int deleteUnusedSince(long cutoffMillis) {
+        File[] files = null == this.directory ? null : this.directory.listFiles();
+        if (null == files) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (file.isFile() && file.lastModified() < cutoffMillis) {
+                this.delete(file);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            LOGGER.fine("removed " + deleted + " unused objects cached on disk");
+        }
+        return deleted;
+    }
+
+    private File fileFor(String key) {
+        if (null == this.directory) {
+            return null;
+        }
+        return new File(this.directory, Util.getDigestOf(key));
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("could not delete " + file);
+        }
+    }
+
+    /**
+     * Removes access for everyone but the jenkins user. Creating the file first means it is never readable by
+     * others, even before its contents are written.
+     */
+    private static void ownerOnly(File file) throws IOException {
+        if (!file.exists() && !file.createNewFile()) {
+            throw new IOException("could not create " + file);
+        }
+        boolean directory = file.isDirectory();
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setExecutable(false, false);
+        if (!file.setReadable(true, true) || !file.setWritable(true, true)
+                || (directory && !file.setExecutable(true, true))) {
+            throw new IOException("could not restrict access to " + file);
+        }
+    }
+
+    @Extension
+    public static class StaleFileCollector extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return HOUR;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            long maxAgeMillis = TimeUnit.DAYS.toMillis(Long.getLong(MAX_AGE_DAYS_PROPERTY, DEFAULT_MAX_AGE_DAYS));
+            AwsBucketDiskCache.get().deleteUnusedSince(System.currentTimeMillis() - maxAgeMillis);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null == closeable) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.fine("could not close cache file");
+        }
+    }
+}
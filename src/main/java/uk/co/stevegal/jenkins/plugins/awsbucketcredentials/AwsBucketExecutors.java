@@ -0,0 +1,87 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.Secret;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bounded thread pools that asynchronous credential reads run on. S3 reads and KMS decrypts have a pool
+ * each, so while one credential is being decrypted the next one can already be downloading.
+ */
+public final class AwsBucketExecutors {
+
+    static final String S3_THREADS_PROPERTY = AwsBucketExecutors.class.getName() + ".s3Threads";
+    static final int DEFAULT_S3_THREADS = 8;
+    static final String KMS_THREADS_PROPERTY = AwsBucketExecutors.class.getName() + ".kmsThreads";
+    static final int DEFAULT_KMS_THREADS = 4;
+
+    private static final ListeningExecutorService S3 =
+            create("AwsBucketCredentials s3", Integer.getInteger(S3_THREADS_PROPERTY, DEFAULT_S3_THREADS));
+    private static final ListeningExecutorService KMS =
+            create("AwsBucketCredentials kms", Integer.getInteger(KMS_THREADS_PROPERTY, DEFAULT_KMS_THREADS));
+
+    private AwsBucketExecutors() {
+    }
+
+    /**
+     * @return the pool that {@link AwsBucketCredentialsImpl#getPasswordAsync()} reads bucket objects on
+     */
+    public static ListeningExecutorService s3() {
+        return S3;
+    }
+
+    /**
+     * @return the pool that {@link AwsBucketCredentialsImpl#getPasswordAsync()} decrypts with kms on
+     */
+    public static ListeningExecutorService kms() {
+        return KMS;
+    }
+
+    /**
+     * @return the password, read without blocking the calling thread. Credentials from other plugins that do not
+     * read asynchronously themselves are read on {@link #s3()}.
+     */
+    public static ListenableFuture<Secret> getPasswordAsync(final AwsBucketCredentials credentials) {
+        if (credentials instanceof AwsBucketCredentialsImpl) {
+            return ((AwsBucketCredentialsImpl) credentials).getPasswordAsync();
+        }
+        return S3.submit(new Callable<Secret>() {
+            @Override
+            public Secret call() {
+                return credentials.getPassword();
+            }
+        });
+    }
+
+    /**
+     * Starts reading every credential at once. The reads are limited by the size of each pool rather than done
+     * one after another, so the whole batch takes about as long as the slower of s3 and kms would on its own.
+     *
+     * @return the passwords by credential id
+     */
+    public static Map<String, ListenableFuture<Secret>> getPasswords(Collection<? extends AwsBucketCredentials> credentials) {
+        Map<String, ListenableFuture<Secret>> futures = new LinkedHashMap<String, ListenableFuture<Secret>>();
+        for (AwsBucketCredentials credential : credentials) {
+            futures.put(credential.getId(), getPasswordAsync(credential));
+        }
+        return futures;
+    }
+
+    private static ListeningExecutorService create(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), name));
+        executor.allowCoreThreadTimeOut(true);
+        return MoreExecutors.listeningDecorator(executor);
+    }
+}
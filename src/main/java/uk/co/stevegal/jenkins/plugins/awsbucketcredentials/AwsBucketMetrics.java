@@ -0,0 +1,114 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.codahale.metrics.MetricRegistry;
+import hudson.Util;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records s3 and kms latency, queue waits, failures, throttling, retries, bytes read and cache hits through the
+ * metrics plugin. Everything is recorded per region, under names starting with {@link #PREFIX}. Credential ids are
+ * not used in names, so the number of metrics does not grow with the number of credentials.
+ */
+public final class AwsBucketMetrics {
+
+    public static final String PREFIX = "aws-bucket-credentials";
+    public static final String S3_GET = "s3.get";
+    public static final String KMS_DECRYPT = "kms.decrypt";
+
+    private AwsBucketMetrics() {
+    }
+
+    static MetricRegistry registry() {
+        return Metrics.metricRegistry();
+    }
+
+    /**
+     * @return false on an agent, which has no metrics registry, so calls made there are not recorded
+     */
+    private static boolean onController() {
+        return null != Jenkins.getInstance();
+    }
+
+    public static Sample start(String operation, String region) {
+        return new Sample(operation, region);
+    }
+
+    public static void cacheHit(String region) {
+        if (onController()) {
+            registry().counter(MetricRegistry.name(PREFIX, "cache.hit", "region", regionName(region))).inc();
+        }
+    }
+
+    public static void cacheMiss(String region) {
+        if (onController()) {
+            registry().counter(MetricRegistry.name(PREFIX, "cache.miss", "region", regionName(region))).inc();
+        }
+    }
+
+    public static void bytesRead(String region, long bytes) {
+        if (onController()) {
+            registry().histogram(MetricRegistry.name(PREFIX, "s3.bytes", "region", regionName(region))).update(bytes);
+        }
+    }
+
+    public static void retry(String service, String region, Throwable cause) {
+        if (!onController()) {
+            return;
+        }
+        MetricRegistry registry = registry();
+        registry.counter(MetricRegistry.name(PREFIX, service, "retries", "region", regionName(region))).inc();
+        if (AwsErrors.isThrottling(cause)) {
+            registry.counter(MetricRegistry.name(PREFIX, service, "throttled", "region", regionName(region))).inc();
+        }
+    }
+
+    /**
+     * Records how long a call waited for a client side limit before it was made.
+     */
+    public static void queueWait(String operation, String region, long nanos) {
+        if (onController()) {
+            registry().timer(MetricRegistry.name(PREFIX, operation, "queue-wait", "region", regionName(region)))
+                    .update(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static String regionName(String region) {
+        String name = Util.fixEmptyAndTrim(region);
+        return null == name ? "default" : name;
+    }
+
+    /**
+     * A single timed call. Exactly one of {@link #success()} or {@link #failure(Throwable)} should be called.
+     */
+    public static final class Sample {
+        private final String operation;
+        private final String region;
+        private final long start = System.nanoTime();
+
+        private Sample(String operation, String region) {
+            this.operation = operation;
+            this.region = regionName(region);
+        }
+
+        public void success() {
+            if (onController()) {
+                registry().timer(MetricRegistry.name(PREFIX, this.operation, "region", this.region))
+                        .update(System.nanoTime() - this.start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void failure(Throwable cause) {
+            if (!onController()) {
+                return;
+            }
+            MetricRegistry registry = registry();
+            registry.counter(MetricRegistry.name(PREFIX, this.operation, "failures", "region", this.region)).inc();
+            if (AwsErrors.isThrottling(cause)) {
+                registry.counter(MetricRegistry.name(PREFIX, this.operation, "throttled", "region", this.region)).inc();
+            }
+        }
+    }
+}
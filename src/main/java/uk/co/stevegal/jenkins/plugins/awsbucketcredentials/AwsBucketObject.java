@@ -0,0 +1,28 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+/**
+ * The raw contents of a bucket object together with the identifiers needed to ask s3 whether it has changed.
+ */
+public class AwsBucketObject {
+    private final byte[] content;
+    private final String eTag;
+    private final String versionId;
+
+    public AwsBucketObject(byte[] content, String eTag, String versionId) {
+        this.content = content;
+        this.eTag = eTag;
+        this.versionId = versionId;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getVersionId() {
+        return versionId;
+    }
+}
@@ -0,0 +1,82 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the content of a bucket object straight into a byte array of the right size. When s3 sends a
+ * Content-Length the array is allocated once at that size; otherwise it grows as needed. Objects over the maximum
+ * size are rejected, and every buffer that is not handed back to the caller is zeroed.
+ */
+public final class AwsBucketObjectReader {
+
+    static final String MAX_OBJECT_BYTES_PROPERTY = AwsBucketObjectReader.class.getName() + ".maxObjectBytes";
+    static final int DEFAULT_MAX_OBJECT_BYTES = 4 * 1024 * 1024;
+    static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private AwsBucketObjectReader() {
+    }
+
+    static int maxObjectBytes() {
+        return Integer.getInteger(MAX_OBJECT_BYTES_PROPERTY, DEFAULT_MAX_OBJECT_BYTES);
+    }
+
+    /**
+     * @param contentLength the length s3 reported, or 0 or less if unknown
+     */
+    public static byte[] read(InputStream in, long contentLength, int maxBytes) throws IOException {
+        if (contentLength > maxBytes) {
+            throw new ObjectTooLargeException("object is " + contentLength + " bytes, more than the limit of " + maxBytes);
+        }
+        byte[] buffer = new byte[contentLength > 0 ? (int) contentLength : Math.min(INITIAL_BUFFER_SIZE, maxBytes)];
+        int length = 0;
+        try {
+            while (true) {
+                if (length == buffer.length) {
+                    if (contentLength > 0) {
+                        if (in.read() == -1) {
+                            return buffer;
+                        }
+                        throw new IOException("object is longer than its Content-Length of " + contentLength);
+                    }
+                    if (length >= maxBytes) {
+                        throw new ObjectTooLargeException("object is more than the limit of " + maxBytes + " bytes");
+                    }
+                    buffer = grow(buffer, (int) Math.min((long) maxBytes, buffer.length * 2L));
+                }
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+        } catch (IOException e) {
+            Arrays.fill(buffer, (byte) 0);
+            throw e;
+        }
+        if (length == buffer.length) {
+            return buffer;
+        }
+        byte[] content = Arrays.copyOf(buffer, length);
+        Arrays.fill(buffer, (byte) 0);
+        return content;
+    }
+
+    /**
+     * The object is bigger than we are willing to read. This is a problem with the object, not with s3.
+     */
+    public static final class ObjectTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ObjectTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private static byte[] grow(byte[] buffer, int size) {
+        byte[] grown = Arrays.copyOf(buffer, size);
+        Arrays.fill(buffer, (byte) 0);
+        return grown;
+    }
+}
@@ -0,0 +1,136 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.List;
+
+/**
+ * A bucket prefix, every object under which is offered as a credential by
+ * {@link AwsBucketPrefixCredentialsProvider}. Each object becomes a credential whose id is the id prefix followed by
+ * its key with the bucket prefix removed, decrypted with the settings given here.
+ */
+public class AwsBucketPrefix extends AbstractDescribableImpl<AwsBucketPrefix> {
+
+    private final String region;
+    private final String bucketName;
+    private final String prefix;
+    private final boolean useKms;
+    private final String kmsEncryptionContextKey;
+    private final String kmsEncryptionContextValue;
+    private String idPrefix;
+    private String username;
+    private int cacheTtlSeconds;
+    private transient AwsBucketPrefixListing listing;
+
+    @DataBoundConstructor
+    public AwsBucketPrefix(String region, String bucketName, String prefix, boolean useKms,
+                           String kmsEncryptionContextKey, String kmsEncryptionContextValue) {
+        this.region = Util.fixEmptyAndTrim(region);
+        this.bucketName = Util.fixEmptyAndTrim(bucketName);
+        this.prefix = Util.fixNull(prefix).trim();
+        this.useKms = useKms;
+        this.kmsEncryptionContextKey = Util.fixEmptyAndTrim(kmsEncryptionContextKey);
+        this.kmsEncryptionContextValue = Util.fixEmptyAndTrim(kmsEncryptionContextValue);
+    }
+
+    /**
+     * @param idPrefix put in front of the id of every credential under the prefix, to keep them apart from
+     *                 credentials stored elsewhere and from other prefixes
+     */
+    @DataBoundSetter
+    public void setIdPrefix(String idPrefix) {
+        this.idPrefix = Util.fixEmptyAndTrim(idPrefix);
+    }
+
+    public String getIdPrefix() {
+        return idPrefix;
+    }
+
+    /**
+     * @param username the username of every credential under the prefix. Blank means each uses its own id.
+     */
+    @DataBoundSetter
+    public void setUsername(String username) {
+        this.username = Util.fixEmptyAndTrim(username);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    @DataBoundSetter
+    public void setCacheTtlSeconds(int cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    public int getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isUseKms() {
+        return useKms;
+    }
+
+    public String getKmsEncryptionContextKey() {
+        return kmsEncryptionContextKey;
+    }
+
+    public String getKmsEncryptionContextValue() {
+        return kmsEncryptionContextValue;
+    }
+
+    /**
+     * @return a credential for each object currently under the prefix. Nothing is read from the objects until a
+     * password is asked for.
+     */
+    public List<AwsBucketCredentialsImpl> credentials() {
+        return this.listing().credentials(new AwsS3ClientBuilder().region(this.region).build());
+    }
+
+    synchronized AwsBucketPrefixListing listing() {
+        if (null == this.listing) {
+            this.listing = new AwsBucketPrefixListing(this, AwsBucketPrefixListing.refreshMillis());
+        }
+        return this.listing;
+    }
+
+    /**
+     * @param key the key of an object under the prefix
+     */
+    AwsBucketCredentialsImpl credentialFor(String key) {
+        String id = Util.fixNull(this.idPrefix) + key.substring(this.prefix.length());
+        AwsBucketCredentialsImpl credentials = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, id,
+                this.region, this.bucketName, key, null == this.username ? id : this.username, false,
+                "s3://" + this.bucketName + "/" + key, this.useKms, false, this.kmsEncryptionContextKey,
+                this.kmsEncryptionContextValue, null, null);
+        credentials.setCacheTtlSeconds(this.cacheTtlSeconds);
+        return credentials;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<AwsBucketPrefix> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.AwsBucketPrefix_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.ItemGroup;
+import hudson.model.PeriodicWork;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import org.acegisecurity.Authentication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Offers every object under the prefixes set in {@link AwsBucketCredentialsConfiguration} as an
+ * {@link AwsBucketCredentials}, so that large numbers of secrets need not each be entered in credentials.xml.
+ * Like other system wide credentials, they are only handed to {@link ACL#SYSTEM}, which is what builds bind with.
+ * An id already used by a credential stored in Jenkins, or by an earlier prefix, is skipped so that the credential
+ * a build binds never depends on which provider is asked first. Listings are made in the background, so a lookup
+ * returns what was last listed, and which ids clash is only worked out again once a listing or the stored
+ * credentials change.
+ */
+@Extension
+public class AwsBucketPrefixCredentialsProvider extends CredentialsProvider {
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketPrefixCredentialsProvider.class.getName());
+    private static final Set<String> REPORTED = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static volatile Snapshot snapshot;
+
+    @NonNull
+    @Override
+    public <C extends Credentials> List<C> getCredentials(@NonNull Class<C> type, @CheckForNull ItemGroup itemGroup,
+                                                          @CheckForNull Authentication authentication) {
+        AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+        if (null == configuration || !ACL.SYSTEM.equals(authentication)
+                || !type.isAssignableFrom(AwsBucketCredentialsImpl.class)) {
+            return Collections.emptyList();
+        }
+        List<List<AwsBucketCredentialsImpl>> listings = new ArrayList<List<AwsBucketCredentialsImpl>>();
+        for (AwsBucketPrefix prefix : configuration.getPrefixes()) {
+            listings.add(prefix.credentials());
+        }
+        Snapshot current = snapshot;
+        if (null == current || !current.isFor(listings)) {
+            current = new Snapshot(listings, offered(listings));
+            snapshot = current;
+        }
+        List<C> credentials = new ArrayList<C>(current.credentials.size());
+        for (AwsBucketCredentialsImpl credential : current.credentials) {
+            credentials.add(type.cast(credential));
+        }
+        return credentials;
+    }
+
+    /**
+     * @return the listed credentials whose ids are not taken by a stored credential or an earlier prefix
+     */
+    private static List<AwsBucketCredentialsImpl> offered(List<List<AwsBucketCredentialsImpl>> listings) {
+        Set<String> ids = storedIds();
+        List<AwsBucketCredentialsImpl> offered = new ArrayList<AwsBucketCredentialsImpl>();
+        for (List<AwsBucketCredentialsImpl> listing : listings) {
+            for (AwsBucketCredentialsImpl credential : listing) {
+                if (ids.add(credential.getId())) {
+                    offered.add(credential);
+                } else if (REPORTED.add(credential.getId())) {
+                    LOGGER.warning("skipping s3://" + credential.getBucketName() + "/" + credential.getBucketPath()
+                            + " as the id " + credential.getId() + " is already in use");
+                }
+            }
+        }
+        return offered;
+    }
+
+    private static Set<String> storedIds() {
+        Set<String> ids = new HashSet<String>();
+        for (DomainCredentials domain : SystemCredentialsProvider.getInstance().getDomainCredentials()) {
+            for (Credentials credentials : domain.getCredentials()) {
+                if (credentials instanceof IdCredentials) {
+                    ids.add(((IdCredentials) credentials).getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Forgets which ids clash, so that they are worked out again on the next lookup.
+     */
+    static void forgetSnapshot() {
+        snapshot = null;
+    }
+
+    /**
+     * What was offered for a set of listings. Listings keep returning the same list until they are refreshed, so
+     * comparing them tells whether the offer is still current.
+     */
+    private static final class Snapshot {
+        private final List<List<AwsBucketCredentialsImpl>> listings;
+        private final List<AwsBucketCredentialsImpl> credentials;
+
+        Snapshot(List<List<AwsBucketCredentialsImpl>> listings, List<AwsBucketCredentialsImpl> credentials) {
+            this.listings = listings;
+            this.credentials = credentials;
+        }
+
+        boolean isFor(List<List<AwsBucketCredentialsImpl>> listings) {
+            if (this.listings.size() != listings.size()) {
+                return false;
+            }
+            for (int i = 0; i < listings.size(); i++) {
+                if (this.listings.get(i) != listings.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Works out again which ids clash when credentials are added to, or removed from, the global store.
+     */
+    @Extension
+    public static class StoreListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                forgetSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Keeps the listings of every prefix current, so that the first lookup after a start or a change of prefixes
+     * finds them already listed.
+     */
+    @Extension
+    public static class ListingRefresher extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+            if (null == configuration) {
+                return;
+            }
+            for (AwsBucketPrefix prefix : configuration.getPrefixes()) {
+                prefix.credentials();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import hudson.Util;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The objects under an {@link AwsBucketPrefix}, listed a page at a time and kept for the refresh interval.
+ * A credential is only created again when its object's etag changes, so unchanged objects keep their cached
+ * secrets across listings. Every listing, the first included, runs in the background and the last listing is served
+ * until it finishes, so looking credentials up never waits on s3.
+ */
+public class AwsBucketPrefixListing {
+
+    static final String REFRESH_SECONDS_PROPERTY = AwsBucketPrefixListing.class.getName() + ".refreshSeconds";
+    static final long DEFAULT_REFRESH_SECONDS = 60;
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketPrefixListing.class.getName());
+    private static final Executor EXECUTOR = createExecutor();
+
+    private final AwsBucketPrefix prefix;
+    private final long refreshMillis;
+    private final Executor executor;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Map<String, Listed> listed;
+    private volatile List<AwsBucketCredentialsImpl> credentials = Collections.emptyList();
+    private volatile long refreshAt;
+
+    AwsBucketPrefixListing(AwsBucketPrefix prefix, long refreshMillis) {
+        this(prefix, refreshMillis, EXECUTOR);
+    }
+
+    AwsBucketPrefixListing(AwsBucketPrefix prefix, long refreshMillis, Executor executor) {
+        this.prefix = prefix;
+        this.refreshMillis = refreshMillis;
+        this.executor = executor;
+    }
+
+    static long refreshMillis() {
+        return TimeUnit.SECONDS.toMillis(Long.getLong(REFRESH_SECONDS_PROPERTY, DEFAULT_REFRESH_SECONDS));
+    }
+
+    /**
+     * @param s3 used to list the prefix again, in the background, if the refresh interval has passed
+     * @return a credential for each object in the last listing, which is empty until the first listing is done. The
+     * same list is returned until a listing finishes, so callers can keep what they derive from it until then. If
+     * listing fails, the previous listing is used until the next refresh.
+     */
+    public List<AwsBucketCredentialsImpl> credentials(final AmazonS3 s3) {
+        if (System.currentTimeMillis() >= this.refreshAt && this.refreshing.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refresh(s3);
+                        } finally {
+                            refreshing.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOGGER.fine("could not schedule prefix listing, serving the previous one");
+                this.refreshing.set(false);
+            }
+        }
+        return this.credentials;
+    }
+
+    private void refresh(AmazonS3 s3) {
+        try {
+            Map<String, Listed> listed = this.list(s3);
+            List<AwsBucketCredentialsImpl> credentials = new ArrayList<AwsBucketCredentialsImpl>(listed.size());
+            for (Listed object : listed.values()) {
+                credentials.add(object.credentials);
+            }
+            this.listed = listed;
+            this.credentials = Collections.unmodifiableList(credentials);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "could not list s3://" + this.prefix.getBucketName() + "/"
+                    + this.prefix.getPrefix() + ", keeping the previous listing", e);
+        } finally {
+            this.refreshAt = System.currentTimeMillis() + this.refreshMillis;
+        }
+    }
+
+    private Map<String, Listed> list(AmazonS3 s3) {
+        LOGGER.fine("listing s3 prefix");
+        Map<String, Listed> previous = null == this.listed ? Collections.<String, Listed>emptyMap() : this.listed;
+        Map<String, Listed> listed = new LinkedHashMap<String, Listed>();
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(this.prefix.getBucketName())
+                .withPrefix(this.prefix.getPrefix());
+        ListObjectsV2Result result;
+        do {
+            result = s3.listObjectsV2(request);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                String key = summary.getKey();
+                if (key.endsWith("/") || key.length() == this.prefix.getPrefix().length()) {
+                    // folder placeholders, and the prefix itself, would have no usable id
+                    continue;
+                }
+                Listed unchanged = previous.get(key);
+                if (null != unchanged && Util.fixNull(unchanged.eTag).equals(Util.fixNull(summary.getETag()))) {
+                    listed.put(key, unchanged);
+                } else {
+                    listed.put(key, new Listed(summary.getETag(), this.prefix.credentialFor(key)));
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return listed;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "AwsBucketCredentials prefix listing"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Listed {
+        private final String eTag;
+        private final AwsBucketCredentialsImpl credentials;
+
+        Listed(String eTag, AwsBucketCredentialsImpl credentials) {
+            this.eTag = eTag;
+            this.credentials = credentials;
+        }
+    }
+}
@@ -7,4 +7,8 @@ public class AwsBucketReadingException extends RuntimeException {
     public  AwsBucketReadingException(Exception cause) {
         super(cause);
     }
+
+    public AwsBucketReadingException(String message) {
+        super(message);
+    }
 }
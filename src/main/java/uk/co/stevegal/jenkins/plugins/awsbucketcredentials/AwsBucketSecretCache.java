@@ -0,0 +1,216 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.util.Secret;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide cache of decrypted bucket secrets. Entries expire after the ttl of the credential that
+ * stored them, but are kept with the etag of the object they came from until the least recently used entry
+ * is evicted once the cache is full.
+ */
+public class AwsBucketSecretCache {
+
+    static final String MAX_ENTRIES_PROPERTY = AwsBucketSecretCache.class.getName() + ".maxEntries";
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+    /**
+     * Entries are refreshed in the background once this much of their ttl has passed.
+     */
+    static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketSecretCache.class.getName());
+    private static final AwsBucketSecretCache INSTANCE =
+            new AwsBucketSecretCache(Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+
+    private final Map<String, Entry> entries;
+    /**
+     * The generation each recently changed object was given, so that reads started before a change are not cached.
+     */
+    private final Map<String, Long> generations;
+    private long lastGeneration;
+    private long forgottenGeneration;
+
+    AwsBucketSecretCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.generations = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > maxEntries) {
+                    // objects no longer tracked all report the newest generation forgotten, so a read that
+                    // started before one of them changed still sees a different generation
+                    forgottenGeneration = Math.max(forgottenGeneration, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static AwsBucketSecretCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the cached entry, or null if there is none. Expired entries are still returned so that their
+     * etag can be used to check whether the bucket object has changed.
+     */
+    public synchronized Entry lookup(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * @return the object's generation, to be taken before reading it and passed to
+     * {@link #put(String, String, String, String, Secret, String, String, long, long)}
+     */
+    public synchronized long generation(String bucketName, String bucketPath) {
+        Long generation = this.generations.get(objectId(bucketName, bucketPath));
+        return null == generation ? this.forgottenGeneration : generation;
+    }
+
+    /**
+     * Caches a secret, unless the object it was read from has been invalidated since the read started.
+     *
+     * @param bucketName the bucket the secret was read from, so that a change to the object can invalidate it
+     * @param bucketPath the key of the object within the bucket
+     * @param generation the object's {@link #generation(String, String)} from before the read
+     */
+    public synchronized void put(String key, String credentialId, String bucketName, String bucketPath, Secret secret,
+                                 String eTag, String versionId, long ttlMillis, long generation) {
+        if (generation != this.generation(bucketName, bucketPath)) {
+            LOGGER.fine("not caching a secret read before its object changed");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        this.entries.put(key, new Entry(credentialId, bucketName, objectKey(bucketPath), secret, eTag, versionId,
+                now + (long) (ttlMillis * REFRESH_AHEAD_FRACTION), now + ttlMillis, now + 2 * ttlMillis));
+    }
+
+    /**
+     * Drops every entry stored for the credential, e.g. because it has been edited.
+     */
+    public synchronized void invalidate(String credentialId) {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().credentialId.equals(credentialId)) {
+                LOGGER.fine("invalidating cached secret for " + credentialId);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every entry read from the object, e.g. because s3 reported that it was overwritten or deleted.
+     *
+     * @return how many entries were dropped
+     */
+    public synchronized int invalidateObject(String bucketName, String bucketPath) {
+        String objectKey = objectKey(bucketPath);
+        this.generations.put(objectId(bucketName, bucketPath), ++this.lastGeneration);
+        int invalidated = 0;
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (null != entry.bucketName && entry.bucketName.equals(bucketName) && objectKey.equals(entry.objectKey)) {
+                iterator.remove();
+                invalidated++;
+            }
+        }
+        if (invalidated > 0) {
+            LOGGER.fine("invalidated " + invalidated + " cached secrets read from " + bucketName + "/" + objectKey);
+        }
+        return invalidated;
+    }
+
+    /**
+     * Drops every entry and forgets every object's generation. Reads already under way are treated as if their
+     * object changed, so none of them is cached afterwards.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.generations.clear();
+        this.forgottenGeneration = ++this.lastGeneration;
+    }
+
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    private static String objectId(String bucketName, String bucketPath) {
+        return bucketName + "/" + objectKey(bucketPath);
+    }
+
+    /**
+     * Credentials may be configured with a leading slash that s3 event notifications never have.
+     */
+    private static String objectKey(String bucketPath) {
+        String key = null == bucketPath ? "" : bucketPath;
+        while (key.startsWith("/")) {
+            key = key.substring(1);
+        }
+        return key;
+    }
+
+    public static final class Entry {
+        private final String credentialId;
+        private final String bucketName;
+        private final String objectKey;
+        private final Secret secret;
+        private final String eTag;
+        private final String versionId;
+        private final long refreshAt;
+        private final long expiresAt;
+        private final long staleUntil;
+
+        Entry(String credentialId, String bucketName, String objectKey, Secret secret, String eTag, String versionId,
+              long refreshAt, long expiresAt, long staleUntil) {
+            this.credentialId = credentialId;
+            this.bucketName = bucketName;
+            this.objectKey = objectKey;
+            this.secret = secret;
+            this.eTag = eTag;
+            this.versionId = versionId;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
+
+        public Secret getSecret() {
+            return secret;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getVersionId() {
+            return versionId;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= this.expiresAt;
+        }
+
+        /**
+         * @return true once the entry is close enough to expiry that it should be refreshed in the background.
+         */
+        public boolean isDueForRefresh() {
+            return System.currentTimeMillis() >= this.refreshAt;
+        }
+
+        /**
+         * @return true while an expired entry may still be served as long as it is being refreshed.
+         * This is one further ttl after expiry.
+         */
+        public boolean isServableWhileRefreshing() {
+            return System.currentTimeMillis() < this.staleUntil;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Re-reads cached secrets in the background so that readers are served from memory while the refresh happens.
+ * At most one refresh per cache key is in flight, and a key whose refresh failed is not retried until its
+ * backoff has passed. The state kept for a key is dropped once its cache entry is gone or can no longer be served,
+ * since nothing will ask for it to be refreshed again.
+ */
+public class AwsBucketSecretRefresher {
+
+    static final String THREADS_PROPERTY = AwsBucketSecretRefresher.class.getName() + ".threads";
+    static final int DEFAULT_THREADS = 2;
+    static final int QUEUE_SIZE = 100;
+    static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Logger LOGGER = Logger.getLogger(AwsBucketSecretRefresher.class.getName());
+    private static final AwsBucketSecretRefresher INSTANCE = new AwsBucketSecretRefresher(createExecutor(),
+            AwsBucketSecretCache.get());
+
+    private final Executor executor;
+    private final AwsBucketSecretCache cache;
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<String, State>();
+    private volatile long sweepAt;
+
+    AwsBucketSecretRefresher(Executor executor, AwsBucketSecretCache cache) {
+        this.executor = executor;
+        this.cache = cache;
+    }
+
+    public static AwsBucketSecretRefresher get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedules the refresh unless one is already running for the key or the key is backing off after a failure.
+     */
+    public void refreshAhead(final String key, final Runnable refresh) {
+        long now = System.currentTimeMillis();
+        if (now >= this.sweepAt) {
+            this.sweepAt = now + SWEEP_INTERVAL_MILLIS;
+            this.sweep();
+        }
+        State state = this.states.get(key);
+        if (null == state) {
+            State created = new State();
+            state = this.states.putIfAbsent(key, created);
+            if (null == state) {
+                state = created;
+            }
+        }
+        final State refreshState = state;
+        if (now < refreshState.nextAttemptAt || !refreshState.begin()) {
+            return;
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh.run();
+                        refreshState.succeeded();
+                        states.remove(key, refreshState);
+                    } catch (RuntimeException e) {
+                        long backoff = refreshState.failed();
+                        LOGGER.log(Level.WARNING, "background refresh of " + key + " failed, retrying in "
+                                + backoff + "ms", e);
+                    } finally {
+                        // also reached when the refresh throws an Error, which would otherwise block the key for good
+                        refreshState.end();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.fine("refresh queue full, " + key + " will be read by the next caller");
+            refreshState.end();
+        }
+    }
+
+    /**
+     * Drops the state of keys that are not being refreshed and whose cache entry has been evicted, invalidated or
+     * has gone past the point where it is served while refreshing.
+     */
+    void sweep() {
+        for (Map.Entry<String, State> state : this.states.entrySet()) {
+            if (state.getValue().isInFlight()) {
+                continue;
+            }
+            AwsBucketSecretCache.Entry cached = this.cache.lookup(state.getKey());
+            if (null == cached || !cached.isServableWhileRefreshing()) {
+                this.states.remove(state.getKey(), state.getValue());
+            }
+        }
+    }
+
+    int size() {
+        return this.states.size();
+    }
+
+    private static Executor createExecutor() {
+        int threads = Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+                new NamingThreadFactory(new DaemonThreadFactory(), "AwsBucketCredentials refresh"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class State {
+        private boolean inFlight;
+        private int failures;
+        private volatile long nextAttemptAt;
+
+        synchronized boolean begin() {
+            if (this.inFlight) {
+                return false;
+            }
+            this.inFlight = true;
+            return true;
+        }
+
+        synchronized boolean isInFlight() {
+            return this.inFlight;
+        }
+
+        synchronized void end() {
+            this.inFlight = false;
+        }
+
+        synchronized void succeeded() {
+            this.failures = 0;
+            this.nextAttemptAt = 0;
+        }
+
+        synchronized long failed() {
+            this.failures++;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(this.failures - 1, 16));
+            this.nextAttemptAt = System.currentTimeMillis() + backoff;
+            return backoff;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the default aws credentials chain once for the whole controller and hands out the result from memory.
+ * Once the refresh interval has passed, the chain is resolved again in the background while the previous
+ * credentials keep being used, so no credential read waits on the instance metadata endpoint after the first.
+ */
+public class AwsCachedCredentialsProvider implements AWSCredentialsProvider {
+
+    static final String REFRESH_MINUTES_PROPERTY = AwsCachedCredentialsProvider.class.getName() + ".refreshMinutes";
+    static final long DEFAULT_REFRESH_MINUTES = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(AwsCachedCredentialsProvider.class.getName());
+    private static final AwsCachedCredentialsProvider INSTANCE = new AwsCachedCredentialsProvider(
+            new DefaultAWSCredentialsProviderChain(), createExecutor(),
+            TimeUnit.MINUTES.toMillis(Long.getLong(REFRESH_MINUTES_PROPERTY, DEFAULT_REFRESH_MINUTES)));
+
+    private final AWSCredentialsProvider delegate;
+    private final Executor executor;
+    private final long refreshIntervalMillis;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile AWSCredentials credentials;
+    private volatile long refreshAt;
+
+    AwsCachedCredentialsProvider(AWSCredentialsProvider delegate, Executor executor, long refreshIntervalMillis) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    public static AwsCachedCredentialsProvider get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public AWSCredentials getCredentials() {
+        AWSCredentials current = this.credentials;
+        if (null == current) {
+            synchronized (this) {
+                if (null == this.credentials) {
+                    this.resolve();
+                }
+                return this.credentials;
+            }
+        }
+        if (System.currentTimeMillis() >= this.refreshAt) {
+            this.refreshInBackground();
+        }
+        return current;
+    }
+
+    /**
+     * Resolves the chain again straight away, e.g. after the sdk was told the credentials were rejected.
+     */
+    @Override
+    public void refresh() {
+        synchronized (this) {
+            this.resolve();
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "could not refresh aws credentials, keeping the current ones", e);
+                        refreshAt = System.currentTimeMillis()
+                                + Math.min(refreshIntervalMillis, TimeUnit.MINUTES.toMillis(1));
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.set(false);
+        }
+    }
+
+    private void resolve() {
+        LOGGER.fine("resolving aws credentials");
+        this.delegate.refresh();
+        this.credentials = this.delegate.getCredentials();
+        this.refreshAt = System.currentTimeMillis() + this.refreshIntervalMillis;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "AwsBucketCredentials aws credentials refresh"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,127 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stops calling a service in a region for a while after it has failed repeatedly, so that a burst of builds
+ * fails fast instead of every one of them waiting through its retries. After the open period a single call is
+ * let through, and its result decides whether the breaker closes again.
+ * Only throttling, server and network errors count; access denied and missing objects say nothing about the
+ * health of the service.
+ */
+public class AwsCircuitBreaker {
+
+    static final String FAILURE_THRESHOLD_PROPERTY = AwsCircuitBreaker.class.getName() + ".failureThreshold";
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final String OPEN_SECONDS_PROPERTY = AwsCircuitBreaker.class.getName() + ".openSeconds";
+    static final long DEFAULT_OPEN_SECONDS = 30;
+
+    private static final Logger LOGGER = Logger.getLogger(AwsCircuitBreaker.class.getName());
+    private static final ConcurrentMap<String, AwsCircuitBreaker> BREAKERS =
+            new ConcurrentHashMap<String, AwsCircuitBreaker>();
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    AwsCircuitBreaker(String name, int failureThreshold, long openNanos) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * @return the breaker shared by every call to the service in the region
+     */
+    public static AwsCircuitBreaker forService(String service, String region) {
+        String name = service + " in " + AwsBucketMetrics.regionName(region);
+        AwsCircuitBreaker breaker = BREAKERS.get(name);
+        if (null == breaker) {
+            AwsCircuitBreaker created = new AwsCircuitBreaker(name,
+                    Integer.getInteger(FAILURE_THRESHOLD_PROPERTY, DEFAULT_FAILURE_THRESHOLD),
+                    TimeUnit.SECONDS.toNanos(Long.getLong(OPEN_SECONDS_PROPERTY, DEFAULT_OPEN_SECONDS)));
+            breaker = BREAKERS.putIfAbsent(name, created);
+            if (null == breaker) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Forgets every breaker, so the next call to each service starts closed.
+     */
+    static void forgetAll() {
+        BREAKERS.clear();
+    }
+
+    /**
+     * @throws AwsBucketReadingException if the breaker is open
+     */
+    public void before() {
+        if (!this.allow(System.nanoTime())) {
+            throw new AwsBucketReadingException("not calling " + this.name + " after repeated failures");
+        }
+    }
+
+    public void success() {
+        synchronized (this) {
+            this.consecutiveFailures = 0;
+            this.trialInFlight = false;
+        }
+    }
+
+    public void failure(Throwable cause) {
+        if (countsAsFailure(cause)) {
+            this.failed(System.nanoTime());
+        } else {
+            this.success();
+        }
+    }
+
+    synchronized boolean allow(long now) {
+        if (this.consecutiveFailures < this.failureThreshold) {
+            return true;
+        }
+        if (now - this.openUntil < 0 || this.trialInFlight) {
+            return false;
+        }
+        this.trialInFlight = true;
+        return true;
+    }
+
+    synchronized void failed(long now) {
+        this.trialInFlight = false;
+        this.consecutiveFailures++;
+        if (this.consecutiveFailures >= this.failureThreshold) {
+            if (this.consecutiveFailures == this.failureThreshold) {
+                LOGGER.warning(this.name + " has failed " + this.consecutiveFailures + " times in a row, pausing calls");
+            }
+            this.openUntil = now + this.openNanos;
+        }
+    }
+
+    static boolean countsAsFailure(Throwable cause) {
+        if (AwsErrors.isThrottling(cause)) {
+            return true;
+        }
+        if (cause instanceof AmazonServiceException) {
+            return ((AmazonServiceException) cause).getStatusCode() >= 500;
+        }
+        if (cause instanceof IOException) {
+            // the connection failing part way through an object body
+            return !(cause instanceof AwsBucketObjectReader.ObjectTooLargeException);
+        }
+        return cause instanceof AmazonClientException;
+    }
+}
@@ -0,0 +1,218 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonWebServiceClient;
+import hudson.Extension;
+import hudson.Util;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Hands out shared, thread safe aws clients keyed by region and proxy settings so that every credential
+ * read reuses the same connection pool. Clients that have not been handed out for the idle timeout are shut down.
+ */
+public class AwsClientRegistry<C extends AmazonWebServiceClient> {
+
+    static final String IDLE_TIMEOUT_PROPERTY = AwsClientRegistry.class.getName() + ".idleTimeoutMinutes";
+    static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 30;
+
+    private static final Logger LOGGER = Logger.getLogger(AwsClientRegistry.class.getName());
+    private static final List<AwsClientRegistry<?>> REGISTRIES = new CopyOnWriteArrayList<AwsClientRegistry<?>>();
+
+    interface ClientFactory<C> {
+        C create();
+    }
+
+    private final String name;
+    private final ConcurrentMap<Key, Entry<C>> clients = new ConcurrentHashMap<Key, Entry<C>>();
+
+    AwsClientRegistry(String name) {
+        this.name = name;
+        REGISTRIES.add(this);
+    }
+
+    C acquire(Key key, ClientFactory<C> factory) {
+        while (true) {
+            Entry<C> entry = this.clients.get(key);
+            if (null == entry) {
+                synchronized (this) {
+                    entry = this.clients.get(key);
+                    if (null == entry) {
+                        LOGGER.fine("creating shared " + this.name + " client for " + key);
+                        entry = new Entry<C>(factory.create());
+                        this.clients.put(key, entry);
+                    }
+                }
+            }
+            if (entry.touch()) {
+                return entry.client;
+            }
+            // evicted between being looked up and touched, and already removed, so look again
+        }
+    }
+
+    int size() {
+        return this.clients.size();
+    }
+
+    void evictIdle(long idleTimeoutMillis) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Entry<C>> candidate : this.clients.entrySet()) {
+            Entry<C> entry = candidate.getValue();
+            if (entry.retireIfIdle(now - idleTimeoutMillis, this.clients, candidate.getKey())) {
+                LOGGER.fine("shutting down idle " + this.name + " client for " + candidate.getKey());
+                entry.client.shutdown();
+            }
+        }
+    }
+
+    void shutdownAll() {
+        for (Map.Entry<Key, Entry<C>> candidate : this.clients.entrySet()) {
+            if (candidate.getValue().retireIfIdle(Long.MAX_VALUE, this.clients, candidate.getKey())) {
+                candidate.getValue().client.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Shuts down every client and stops the registry being reaped or shut down with the others.
+     */
+    void close() {
+        REGISTRIES.remove(this);
+        this.shutdownAll();
+    }
+
+    static long idleTimeoutMillis() {
+        return TimeUnit.MINUTES.toMillis(Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MINUTES));
+    }
+
+    static void evictAllIdle() {
+        long idleTimeoutMillis = idleTimeoutMillis();
+        for (AwsClientRegistry<?> registry : REGISTRIES) {
+            registry.evictIdle(idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * Releases every shared client's connection pool when Jenkins stops.
+     */
+    @Terminator
+    public static void shutdownAllRegistries() {
+        for (AwsClientRegistry<?> registry : REGISTRIES) {
+            registry.shutdownAll();
+        }
+    }
+
+    /**
+     * The settings that make two clients interchangeable, including the role they read through.
+     */
+    static final class Key {
+        private final String region;
+        private final String proxyHost;
+        private final int proxyPort;
+        private final String roleArn;
+        private final String externalId;
+
+        Key(String region, String proxyHost, int proxyPort) {
+            this(region, proxyHost, proxyPort, null, null);
+        }
+
+        Key(String region, String proxyHost, int proxyPort, String roleArn, String externalId) {
+            this.region = Util.fixEmptyAndTrim(region);
+            this.proxyHost = Util.fixEmptyAndTrim(proxyHost);
+            this.proxyPort = null == this.proxyHost ? -1 : proxyPort;
+            this.roleArn = Util.fixEmptyAndTrim(roleArn);
+            this.externalId = null == this.roleArn ? null : Util.fixEmptyAndTrim(externalId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.proxyPort == other.proxyPort
+                    && Util.fixNull(this.region).equals(Util.fixNull(other.region))
+                    && Util.fixNull(this.proxyHost).equals(Util.fixNull(other.proxyHost))
+                    && Util.fixNull(this.roleArn).equals(Util.fixNull(other.roleArn))
+                    && Util.fixNull(this.externalId).equals(Util.fixNull(other.externalId));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Util.fixNull(this.region).hashCode();
+            result = 31 * result + Util.fixNull(this.proxyHost).hashCode();
+            result = 31 * result + Util.fixNull(this.roleArn).hashCode();
+            result = 31 * result + Util.fixNull(this.externalId).hashCode();
+            return 31 * result + this.proxyPort;
+        }
+
+        @Override
+        public String toString() {
+            return "region=" + this.region + ", proxy=" + this.proxyHost + ":" + this.proxyPort + ", role=" + this.roleArn;
+        }
+    }
+
+    /**
+     * Touching and retiring are mutually exclusive, so a client is either handed out or shut down, never both.
+     */
+    private static final class Entry<C> {
+        private final C client;
+        private long lastUsed;
+        private boolean retired;
+
+        Entry(C client) {
+            this.client = client;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * @return false if the entry has been retired and its client must not be used
+         */
+        synchronized boolean touch() {
+            if (this.retired) {
+                return false;
+            }
+            this.lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        /**
+         * Retires the entry and removes it from the registry if it has not been used since the cutoff.
+         *
+         * @return true if the caller should now shut the client down
+         */
+        synchronized <K> boolean retireIfIdle(long cutoff, ConcurrentMap<K, Entry<C>> clients, K key) {
+            if (this.retired || this.lastUsed > cutoff) {
+                return false;
+            }
+            this.retired = true;
+            clients.remove(key, this);
+            return true;
+        }
+    }
+
+    @Extension
+    public static class IdleClientReaper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            evictAllIdle();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+
+import java.util.logging.Logger;
+
+/**
+ * Retries the errors the sdk default would, as long as the region's {@link AwsRetryTokenBucket} allows it, and
+ * records every retry in {@link AwsBucketMetrics}.
+ */
+public class AwsCountingRetryCondition implements RetryPolicy.RetryCondition {
+
+    private static final Logger LOGGER = Logger.getLogger(AwsCountingRetryCondition.class.getName());
+
+    private final String service;
+    private final String region;
+    private final AwsRetryTokenBucket retryBucket;
+
+    public AwsCountingRetryCondition(String service, String region, AwsRetryTokenBucket retryBucket) {
+        this.service = service;
+        this.region = region;
+        this.retryBucket = retryBucket;
+    }
+
+    @Override
+    public boolean shouldRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                               int retriesAttempted) {
+        boolean retry = PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(originalRequest, exception,
+                retriesAttempted);
+        if (retry && !this.retryBucket.tryAcquire()) {
+            LOGGER.fine("retry limit reached for " + this.service + ", not retrying");
+            return false;
+        }
+        if (retry) {
+            AwsBucketMetrics.retry(this.service, this.region, exception);
+        }
+        return retry;
+    }
+}
@@ -0,0 +1,147 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds plaintext envelope data keys so that secrets encrypted under the same data key are decrypted locally
+ * instead of each needing a kms call. A key is forgotten, and its bytes zeroed, once it has been held for its
+ * ttl, used the maximum number of times or evicted as least recently used. A key that is being decrypted with when
+ * it is forgotten is only zeroed once that decrypt is done, which lets decrypts run outside the cache's lock.
+ */
+public class AwsDataKeyCache {
+
+    static final String TTL_PROPERTY = AwsDataKeyCache.class.getName() + ".ttlSeconds";
+    static final String MAX_USES_PROPERTY = AwsDataKeyCache.class.getName() + ".maxUses";
+    static final long DEFAULT_TTL_SECONDS = 300;
+    static final int DEFAULT_MAX_USES = 1000;
+    static final int MAX_ENTRIES = 100;
+
+    private static final AwsDataKeyCache INSTANCE = new AwsDataKeyCache(
+            TimeUnit.SECONDS.toMillis(Long.getLong(TTL_PROPERTY, DEFAULT_TTL_SECONDS)),
+            Integer.getInteger(MAX_USES_PROPERTY, DEFAULT_MAX_USES));
+
+    interface DataKeyDecrypter {
+        byte[] decrypt(byte[] encryptedDataKey);
+    }
+
+    private final long ttlMillis;
+    private final int maxUses;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                eldest.getValue().retire();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    AwsDataKeyCache(long ttlMillis, int maxUses) {
+        this.ttlMillis = ttlMillis;
+        this.maxUses = maxUses;
+    }
+
+    public static AwsDataKeyCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decrypts the plaintext with the cached data key, asking the decrypter for the key if it is not cached.
+     * The key is never handed out, and is pinned while it is used so that it cannot be wiped mid decrypt.
+     *
+     * @param context identifies the kms encryption context the data key was encrypted under
+     */
+    public byte[] decrypt(AwsEnvelope envelope, String context, DataKeyDecrypter decrypter) {
+        String key = context + "|" + Base64.encodeBase64String(envelope.getEncryptedDataKey());
+        Entry pinned = null;
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (null != entry && entry.use(this.maxUses)) {
+                pinned = entry;
+            } else if (null != entry) {
+                this.entries.remove(key).retire();
+            }
+        }
+        if (null != pinned) {
+            try {
+                return envelope.decrypt(pinned.dataKey);
+            } finally {
+                synchronized (this) {
+                    pinned.unpin();
+                }
+            }
+        }
+        byte[] dataKey = decrypter.decrypt(envelope.getEncryptedDataKey());
+        byte[] plaintext = envelope.decrypt(dataKey);
+        synchronized (this) {
+            Entry replaced = this.entries.put(key, new Entry(dataKey, System.currentTimeMillis() + this.ttlMillis));
+            if (null != replaced) {
+                replaced.retire();
+            }
+        }
+        return plaintext;
+    }
+
+    /**
+     * Forgets every data key, zeroing each once nobody is decrypting with it.
+     */
+    public synchronized void clear() {
+        for (Entry entry : this.entries.values()) {
+            entry.retire();
+        }
+        this.entries.clear();
+    }
+
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Only used while holding the cache's lock.
+     */
+    private static final class Entry {
+        private final byte[] dataKey;
+        private final long expiresAt;
+        private int uses;
+        private int pins;
+        private boolean retired;
+
+        Entry(byte[] dataKey, long expiresAt) {
+            this.dataKey = dataKey;
+            this.expiresAt = expiresAt;
+            this.uses = 1;
+        }
+
+        boolean use(int maxUses) {
+            if (this.uses >= maxUses || System.currentTimeMillis() >= this.expiresAt) {
+                return false;
+            }
+            this.uses++;
+            this.pins++;
+            return true;
+        }
+
+        void unpin() {
+            this.pins--;
+            if (this.retired && 0 == this.pins) {
+                Arrays.fill(this.dataKey, (byte) 0);
+            }
+        }
+
+        /**
+         * Wipes the key now if nobody is decrypting with it, or else once the last decrypt is done.
+         */
+        void retire() {
+            this.retired = true;
+            if (0 == this.pins) {
+                Arrays.fill(this.dataKey, (byte) 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.commons.codec.binary.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * An envelope encrypted secret: a kms encrypted data key plus the secret encrypted locally with that key using
+ * AES-GCM. It is stored as json with base64 encoded encryptedDataKey, iv and ciphertext fields, the ciphertext
+ * having the 128 bit GCM tag appended as produced by the JCE.
+ */
+public class AwsEnvelope {
+
+    static final int TAG_LENGTH_BITS = 128;
+
+    private final byte[] encryptedDataKey;
+    private final byte[] iv;
+    private final byte[] ciphertext;
+
+    AwsEnvelope(byte[] encryptedDataKey, byte[] iv, byte[] ciphertext) {
+        this.encryptedDataKey = encryptedDataKey;
+        this.iv = iv;
+        this.ciphertext = ciphertext;
+    }
+
+    /**
+     * A kms ciphertext blob never starts with a brace, so anything that does is taken to be an envelope.
+     */
+    public static boolean isEnvelope(byte[] content) {
+        for (byte b : content) {
+            if (!Character.isWhitespace(b)) {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+
+    public static AwsEnvelope parse(byte[] content) {
+        try {
+            JSONObject json = JSONObject.fromObject(new String(content, Charset.forName("UTF-8")));
+            return new AwsEnvelope(Base64.decodeBase64(json.getString("encryptedDataKey")),
+                    Base64.decodeBase64(json.getString("iv")),
+                    Base64.decodeBase64(json.getString("ciphertext")));
+        } catch (JSONException e) {
+            throw new AwsBucketReadingException(e);
+        }
+    }
+
+    public byte[] getEncryptedDataKey() {
+        return encryptedDataKey;
+    }
+
+    public byte[] decrypt(byte[] dataKey) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(dataKey, "AES"), gcmParameters(this.iv));
+            return cipher.doFinal(this.ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new AwsBucketReadingException(e);
+        }
+    }
+
+    /**
+     * GCMParameterSpec is not in the java 6 api we compile against, but is there on every runtime that has GCM.
+     */
+    private static AlgorithmParameterSpec gcmParameters(byte[] iv) throws GeneralSecurityException {
+        try {
+            return (AlgorithmParameterSpec) Class.forName("javax.crypto.spec.GCMParameterSpec")
+                    .getConstructor(int.class, byte[].class).newInstance(TAG_LENGTH_BITS, iv);
+        } catch (Exception e) {
+            throw new GeneralSecurityException("AES-GCM is not supported by this java runtime", e);
+        }
+    }
+}
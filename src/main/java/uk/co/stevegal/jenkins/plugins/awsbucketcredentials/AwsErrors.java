@@ -0,0 +1,32 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classifies the errors returned by s3 and kms.
+ */
+public final class AwsErrors {
+
+    private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<String>(Arrays.asList(
+            "Throttling", "ThrottlingException", "ThrottledException", "RequestThrottledException",
+            "TooManyRequestsException", "RequestLimitExceeded", "SlowDown", "LimitExceededException"));
+
+    private AwsErrors() {
+    }
+
+    /**
+     * @return true if the error means we are calling the service too fast
+     */
+    public static boolean isThrottling(Throwable error) {
+        if (!(error instanceof AmazonServiceException)) {
+            return false;
+        }
+        AmazonServiceException serviceException = (AmazonServiceException) error;
+        return serviceException.getStatusCode() == 429
+                || THROTTLING_ERROR_CODES.contains(serviceException.getErrorCode());
+    }
+}
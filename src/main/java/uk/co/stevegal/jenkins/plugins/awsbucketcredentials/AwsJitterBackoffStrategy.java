@@ -0,0 +1,49 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.retry.RetryPolicy;
+
+import java.util.Random;
+
+/**
+ * Decorrelated jitter backoff: each delay is picked at random between the base delay and three times the previous
+ * delay, up to a cap. Throttling errors start from a longer base delay. This spreads out the retries of builds that
+ * all failed at the same moment instead of having them retry in lock step.
+ */
+public class AwsJitterBackoffStrategy implements RetryPolicy.BackoffStrategy {
+
+    private final long baseDelayMillis;
+    private final long throttledBaseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+    /**
+     * The sdk retries a request on the thread that made it, so the previous delay of a request is per thread.
+     */
+    private final ThreadLocal<Long> previousDelay = new ThreadLocal<Long>();
+
+    public AwsJitterBackoffStrategy(long baseDelayMillis, long throttledBaseDelayMillis, long maxDelayMillis) {
+        this(baseDelayMillis, throttledBaseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    AwsJitterBackoffStrategy(long baseDelayMillis, long throttledBaseDelayMillis, long maxDelayMillis, Random random) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.throttledBaseDelayMillis = throttledBaseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    @Override
+    public long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                                     int retriesAttempted) {
+        long base = AwsErrors.isThrottling(exception) ? this.throttledBaseDelayMillis : this.baseDelayMillis;
+        Long previous = this.previousDelay.get();
+        if (retriesAttempted == 0 || null == previous) {
+            previous = base;
+        }
+        long upper = Math.max(base, Math.min(this.maxDelayMillis, previous * 3));
+        long delay = Math.min(this.maxDelayMillis, base + (long) (this.random.nextDouble() * (upper - base)));
+        this.previousDelay.set(delay);
+        return delay;
+    }
+}
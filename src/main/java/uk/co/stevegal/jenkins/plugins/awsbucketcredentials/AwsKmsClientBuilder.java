@@ -1,7 +1,7 @@
 package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
 
 import com.amazonaws.ClientConfiguration;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.kms.AWSKMSClient;
@@ -15,23 +15,54 @@ import java.io.Serializable;
 public class AwsKmsClientBuilder implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    private static final AwsClientRegistry<AWSKMSClient> CLIENTS = new AwsClientRegistry<AWSKMSClient>("kms");
+
     private String region;
     private String host=null;
     private int port=-1;
+    private String roleArn;
+    private String externalId;
 
+    /**
+     * @return the shared client for this region and proxy. Callers must not shut it down or change its region.
+     */
     public AWSKMSClient build() {
+        return CLIENTS.acquire(new AwsClientRegistry.Key(this.region, this.host, this.port, this.roleArn, this.externalId),
+                new AwsClientRegistry.ClientFactory<AWSKMSClient>() {
+                    @Override
+                    public AWSKMSClient create() {
+                        return createClient();
+                    }
+                });
+    }
+
+    private AWSKMSClient createClient() {
         ClientConfiguration config = new ClientConfiguration();
+        config.setUseTcpKeepAlive(true);
+        config.setRetryPolicy(AwsRetryPolicies.forService("kms", this.region));
         if (!Util.fixNull(host).trim().isEmpty()) {
             config.setProxyHost(this.host);
             config.setProxyPort(this.port);
         }
-        AWSKMSClient client = new AWSKMSClient(new DefaultAWSCredentialsProviderChain(), config);
+        AWSKMSClient client = new AWSKMSClient(this.credentialsProvider(), config);
         if (!Util.fixNull(region).trim().isEmpty()) {
             client.setRegion(Region.getRegion(Regions.fromName(region)));
         }
         return client;
     }
 
+    private AWSCredentialsProvider credentialsProvider() {
+        if (null == Util.fixEmptyAndTrim(this.roleArn)) {
+            return AwsCachedCredentialsProvider.get();
+        }
+        ClientConfiguration stsConfig = new ClientConfiguration();
+        if (!Util.fixNull(host).trim().isEmpty()) {
+            stsConfig.setProxyHost(this.host);
+            stsConfig.setProxyPort(this.port);
+        }
+        return AwsAssumedRoleCredentialsProvider.forRole(this.roleArn, this.externalId, stsConfig);
+    }
+
     public AwsKmsClientBuilder region(String region) {
         this.region = region;
         return this;
@@ -46,4 +77,14 @@ public class AwsKmsClientBuilder implements Serializable {
         this.port = port;
         return this;
     }
+
+    public AwsKmsClientBuilder roleArn(String roleArn) {
+        this.roleArn = roleArn;
+        return this;
+    }
+
+    public AwsKmsClientBuilder externalId(String externalId) {
+        this.externalId = externalId;
+        return this;
+    }
 }
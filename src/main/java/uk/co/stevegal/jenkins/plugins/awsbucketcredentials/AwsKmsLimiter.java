@@ -0,0 +1,171 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps kms decrypts in a region within the rate and concurrency set in {@link AwsBucketCredentialsConfiguration},
+ * so that jenkins never uses more than its share of an account's kms quota. Callers are served in the order they
+ * arrived, and the time they spent waiting is recorded as a metric.
+ */
+public class AwsKmsLimiter {
+
+    private static final ConcurrentMap<String, AwsKmsLimiter> LIMITERS = new ConcurrentHashMap<String, AwsKmsLimiter>();
+
+    private final String region;
+    private final ReentrantLock rateLock = new ReentrantLock(true);
+    private final ReentrantLock concurrencyLock = new ReentrantLock(true);
+    private final Condition released = this.concurrencyLock.newCondition();
+    private long nextPermitAt;
+    private int inFlight;
+    private volatile Limits limits = new Limits(0, 0);
+
+    AwsKmsLimiter(String region) {
+        this.region = region;
+    }
+
+    public static AwsKmsLimiter forRegion(String region) {
+        String name = AwsBucketMetrics.regionName(region);
+        AwsKmsLimiter limiter = LIMITERS.get(name);
+        if (null == limiter) {
+            AwsKmsLimiter created = new AwsKmsLimiter(name);
+            limiter = LIMITERS.putIfAbsent(name, created);
+            if (null == limiter) {
+                limiter = created;
+            }
+        }
+        AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+        if (null != configuration) {
+            limiter.configure(configuration.getKmsRequestsPerSecond(), configuration.getKmsMaxConcurrentRequests());
+        }
+        return limiter;
+    }
+
+    /**
+     * Forgets every region's limiter. Permits already handed out are still released to the limiter they came from.
+     */
+    static void forgetAll() {
+        LIMITERS.clear();
+    }
+
+    /**
+     * Applies new limits. Requests already holding a permit count against the new concurrency limit, so lowering
+     * it holds back new requests until enough of them have finished.
+     */
+    void configure(int requestsPerSecond, int maxConcurrentRequests) {
+        Limits current = this.limits;
+        if (current.requestsPerSecond != requestsPerSecond || current.maxConcurrentRequests != maxConcurrentRequests) {
+            this.limits = new Limits(requestsPerSecond, maxConcurrentRequests);
+            this.concurrencyLock.lock();
+            try {
+                // waiters may now fit under a raised limit
+                this.released.signalAll();
+            } finally {
+                this.concurrencyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits until a decrypt may be made. The returned permit must be released once the decrypt has finished.
+     */
+    public Permit acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        this.awaitConcurrency();
+        try {
+            int requestsPerSecond = this.limits.requestsPerSecond;
+            if (requestsPerSecond > 0) {
+                this.awaitRate(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+            }
+        } catch (InterruptedException e) {
+            this.release();
+            throw e;
+        }
+        AwsBucketMetrics.queueWait(AwsBucketMetrics.KMS_DECRYPT, this.region, System.nanoTime() - start);
+        return new Permit(this);
+    }
+
+    /**
+     * Waits under the fair lock until fewer than the current limit are in flight. The limit is read again on
+     * every wake up, so a reconfiguration applies to requests that are already waiting.
+     */
+    private void awaitConcurrency() throws InterruptedException {
+        this.concurrencyLock.lockInterruptibly();
+        try {
+            while (this.limits.maxConcurrentRequests > 0 && this.inFlight >= this.limits.maxConcurrentRequests) {
+                this.released.await();
+            }
+            this.inFlight++;
+        } finally {
+            this.concurrencyLock.unlock();
+        }
+    }
+
+    private void release() {
+        this.concurrencyLock.lock();
+        try {
+            this.inFlight--;
+            this.released.signal();
+        } finally {
+            this.concurrencyLock.unlock();
+        }
+    }
+
+    int inFlight() {
+        this.concurrencyLock.lock();
+        try {
+            return this.inFlight;
+        } finally {
+            this.concurrencyLock.unlock();
+        }
+    }
+
+    /**
+     * Reserves the next free slot under the fair lock, so slots are handed out in arrival order, then sleeps
+     * until it comes round.
+     */
+    private void awaitRate(long intervalNanos) throws InterruptedException {
+        long wait;
+        this.rateLock.lockInterruptibly();
+        try {
+            long now = System.nanoTime();
+            long slot = now - this.nextPermitAt > 0 ? now : this.nextPermitAt;
+            this.nextPermitAt = slot + intervalNanos;
+            wait = slot - now;
+        } finally {
+            this.rateLock.unlock();
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private static final class Limits {
+        private final int requestsPerSecond;
+        private final int maxConcurrentRequests;
+
+        Limits(int requestsPerSecond, int maxConcurrentRequests) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+    }
+
+    public static final class Permit {
+        private final AwsKmsLimiter limiter;
+        private boolean released;
+
+        private Permit(AwsKmsLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        public synchronized void release() {
+            if (!this.released) {
+                this.released = true;
+                this.limiter.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Turns decrypted bytes into the single String that {@link hudson.util.Secret} needs. The characters are decoded
+ * into a per thread scratch array which is wiped straight afterwards, so the only copy of the plaintext left behind
+ * is the String itself.
+ */
+public final class AwsPlaintext {
+
+    static final int POOLED_CHARS = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[POOLED_CHARS];
+        }
+    };
+
+    private AwsPlaintext() {
+    }
+
+    /**
+     * Decodes the remaining bytes as UTF-8, replacing malformed input. Wiping the bytes is left to the caller, who
+     * knows whether they are secret.
+     */
+    public static String decode(ByteBuffer bytes) {
+        CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int capacity = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+        char[] chars = capacity <= POOLED_CHARS ? SCRATCH.get() : new char[capacity];
+        CharBuffer out = CharBuffer.wrap(chars, 0, capacity);
+        try {
+            decoder.decode(bytes, out, true);
+            decoder.flush(out);
+            return new String(chars, 0, out.position());
+        } finally {
+            Arrays.fill(chars, 0, capacity, '\0');
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.retry.RetryPolicy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds the retry policy the s3 and kms clients use: jittered backoff, with retries limited per region by a
+ * shared {@link AwsRetryTokenBucket}.
+ */
+public final class AwsRetryPolicies {
+
+    static final String MAX_ERROR_RETRY_PROPERTY = AwsRetryPolicies.class.getName() + ".maxErrorRetry";
+    static final int DEFAULT_MAX_ERROR_RETRY = 3;
+    static final String BASE_DELAY_PROPERTY = AwsRetryPolicies.class.getName() + ".baseDelayMillis";
+    static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    static final String THROTTLED_BASE_DELAY_PROPERTY = AwsRetryPolicies.class.getName() + ".throttledBaseDelayMillis";
+    static final long DEFAULT_THROTTLED_BASE_DELAY_MILLIS = 500;
+    static final String MAX_DELAY_PROPERTY = AwsRetryPolicies.class.getName() + ".maxDelayMillis";
+    static final long DEFAULT_MAX_DELAY_MILLIS = 20000;
+    static final String RETRIES_PER_SECOND_PROPERTY = AwsRetryPolicies.class.getName() + ".retriesPerSecond";
+    static final int DEFAULT_RETRIES_PER_SECOND = 10;
+    static final String RETRY_BURST_PROPERTY = AwsRetryPolicies.class.getName() + ".retryBurst";
+    static final int DEFAULT_RETRY_BURST = 50;
+
+    private static final ConcurrentMap<String, AwsRetryTokenBucket> BUCKETS =
+            new ConcurrentHashMap<String, AwsRetryTokenBucket>();
+
+    private AwsRetryPolicies() {
+    }
+
+    public static RetryPolicy forService(String service, String region) {
+        AwsJitterBackoffStrategy backoff = new AwsJitterBackoffStrategy(
+                Long.getLong(BASE_DELAY_PROPERTY, DEFAULT_BASE_DELAY_MILLIS),
+                Long.getLong(THROTTLED_BASE_DELAY_PROPERTY, DEFAULT_THROTTLED_BASE_DELAY_MILLIS),
+                Long.getLong(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY_MILLIS));
+        return new RetryPolicy(new AwsCountingRetryCondition(service, region, retryBucket(region)), backoff,
+                Integer.getInteger(MAX_ERROR_RETRY_PROPERTY, DEFAULT_MAX_ERROR_RETRY), false);
+    }
+
+    /**
+     * @return the bucket shared by s3 and kms retries in the region
+     */
+    static AwsRetryTokenBucket retryBucket(String region) {
+        String key = AwsBucketMetrics.regionName(region);
+        AwsRetryTokenBucket bucket = BUCKETS.get(key);
+        if (null == bucket) {
+            AwsRetryTokenBucket created = new AwsRetryTokenBucket(
+                    Integer.getInteger(RETRY_BURST_PROPERTY, DEFAULT_RETRY_BURST),
+                    Integer.getInteger(RETRIES_PER_SECOND_PROPERTY, DEFAULT_RETRIES_PER_SECOND));
+            bucket = BUCKETS.putIfAbsent(key, created);
+            if (null == bucket) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+}
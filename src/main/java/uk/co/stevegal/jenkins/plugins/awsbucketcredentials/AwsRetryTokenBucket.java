@@ -0,0 +1,44 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many retries a region may make per second. Once the burst is used up, failed requests are no
+ * longer retried until tokens have been refilled, so a struggling service is not hit with retries on top of the
+ * requests that are already failing.
+ */
+public class AwsRetryTokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public AwsRetryTokenBucket(int burst, double retriesPerSecond) {
+        this(burst, retriesPerSecond, System.nanoTime());
+    }
+
+    AwsRetryTokenBucket(int burst, double retriesPerSecond, long now) {
+        this.capacity = burst;
+        this.tokensPerNano = retriesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = burst;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @return true if a retry may be made now
+     */
+    public boolean tryAcquire() {
+        return this.tryAcquire(System.nanoTime());
+    }
+
+    synchronized boolean tryAcquire(long now) {
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+        this.lastRefill = now;
+        if (this.tokens < 1) {
+            return false;
+        }
+        this.tokens--;
+        return true;
+    }
+}
@@ -1,7 +1,7 @@
 package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
 
 import com.amazonaws.ClientConfiguration;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3Client;
@@ -15,23 +15,54 @@ import java.io.Serializable;
 public class AwsS3ClientBuilder implements Serializable{
     private static final long serialVersionUID = 1L;
 
+    private static final AwsClientRegistry<AmazonS3Client> CLIENTS = new AwsClientRegistry<AmazonS3Client>("s3");
+
     private String region;
     private String host=null;
     private int port=-1;
+    private String roleArn;
+    private String externalId;
 
+    /**
+     * @return the shared client for this region and proxy. Callers must not shut it down or change its region.
+     */
     public AmazonS3Client build() {
+        return CLIENTS.acquire(new AwsClientRegistry.Key(this.region, this.host, this.port, this.roleArn, this.externalId),
+                new AwsClientRegistry.ClientFactory<AmazonS3Client>() {
+                    @Override
+                    public AmazonS3Client create() {
+                        return createClient();
+                    }
+                });
+    }
+
+    private AmazonS3Client createClient() {
         ClientConfiguration config = new ClientConfiguration();
+        config.setUseTcpKeepAlive(true);
+        config.setRetryPolicy(AwsRetryPolicies.forService("s3", this.region));
         if (!Util.fixNull(host).trim().isEmpty()) {
             config.setProxyHost(this.host);
             config.setProxyPort(this.port);
         }
-        AmazonS3Client client = new AmazonS3Client(new DefaultAWSCredentialsProviderChain(), config);
+        AmazonS3Client client = new AmazonS3Client(this.credentialsProvider(), config);
         if (!Util.fixNull(region).trim().isEmpty()) {
             client.setRegion(Region.getRegion(Regions.fromName(region)));
         }
         return client;
     }
 
+    private AWSCredentialsProvider credentialsProvider() {
+        if (null == Util.fixEmptyAndTrim(this.roleArn)) {
+            return AwsCachedCredentialsProvider.get();
+        }
+        ClientConfiguration stsConfig = new ClientConfiguration();
+        if (!Util.fixNull(host).trim().isEmpty()) {
+            stsConfig.setProxyHost(this.host);
+            stsConfig.setProxyPort(this.port);
+        }
+        return AwsAssumedRoleCredentialsProvider.forRole(this.roleArn, this.externalId, stsConfig);
+    }
+
     public AwsS3ClientBuilder region(String region) {
         this.region = region;
         return this;
@@ -46,4 +77,14 @@ public class AwsS3ClientBuilder implements Serializable{
         this.port = port;
         return this;
     }
+
+    public AwsS3ClientBuilder roleArn(String roleArn) {
+        this.roleArn = roleArn;
+        return this;
+    }
+
+    public AwsS3ClientBuilder externalId(String externalId) {
+        this.externalId = externalId;
+        return this;
+    }
 }
@@ -0,0 +1,90 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent calls for the same key so that only the first caller does the work and everyone
+ * waiting alongside it receives the same result or exception. Blocking and asynchronous callers join each
+ * other's calls.
+ */
+public class AwsSingleFlight<V> {
+
+    private final ConcurrentMap<String, ListenableFuture<V>> inFlight =
+            new ConcurrentHashMap<String, ListenableFuture<V>>();
+
+    public V execute(String key, Callable<V> call) {
+        ListenableFutureTask<V> task = ListenableFutureTask.create(call);
+        ListenableFuture<V> running = this.inFlight.putIfAbsent(key, task);
+        if (null == running) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                this.inFlight.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AwsBucketReadingException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AwsBucketReadingException((Exception) cause);
+        }
+    }
+
+    /**
+     * Joins the call in flight for the key, or starts one.
+     *
+     * @param start starts the work without blocking and returns its result
+     */
+    public ListenableFuture<V> executeAsync(final String key, Callable<ListenableFuture<V>> start) {
+        final SettableFuture<V> result = SettableFuture.create();
+        ListenableFuture<V> running = this.inFlight.putIfAbsent(key, result);
+        if (null != running) {
+            return running;
+        }
+        ListenableFuture<V> started;
+        try {
+            started = start.call();
+        } catch (Exception e) {
+            this.inFlight.remove(key, result);
+            result.setException(e);
+            return result;
+        }
+        Futures.addCallback(started, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V value) {
+                inFlight.remove(key, result);
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                inFlight.remove(key, result);
+                result.setException(t);
+            }
+        });
+        return result;
+    }
+
+    int inFlight() {
+        return this.inFlight.size();
+    }
+}
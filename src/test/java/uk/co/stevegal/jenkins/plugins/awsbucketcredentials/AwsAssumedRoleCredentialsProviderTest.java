@@ -0,0 +1,99 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.model.AssumeRoleRequest;
+import com.amazonaws.services.securitytoken.model.AssumeRoleResult;
+import com.amazonaws.services.securitytoken.model.Credentials;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsAssumedRoleCredentialsProviderTest {
+
+    private static final String ROLE = "arn:aws:iam::123456789012:role/jenkins";
+
+    private final AWSSecurityTokenService sts = mock(AWSSecurityTokenService.class);
+    private final QueueingExecutor executor = new QueueingExecutor();
+
+    @Test
+    public void assumesTheRoleOnceWithTheExternalId() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class))).thenReturn(session("first", TimeUnit.HOURS.toMillis(1)));
+        AwsAssumedRoleCredentialsProvider test = new AwsAssumedRoleCredentialsProvider(sts, executor, ROLE, "external", 3600);
+
+        AWSSessionCredentials credentials = (AWSSessionCredentials) test.getCredentials();
+        test.getCredentials();
+
+        assertThat(credentials.getAWSAccessKeyId()).isEqualTo("first");
+        assertThat(credentials.getSessionToken()).isEqualTo("token");
+        ArgumentCaptor<AssumeRoleRequest> request = ArgumentCaptor.forClass(AssumeRoleRequest.class);
+        verify(sts, times(1)).assumeRole(request.capture());
+        assertThat(request.getValue().getRoleArn()).isEqualTo(ROLE);
+        assertThat(request.getValue().getExternalId()).isEqualTo("external");
+        assertThat(request.getValue().getDurationSeconds()).isEqualTo(3600);
+        assertThat(executor.queued).isEmpty();
+    }
+
+    @Test
+    public void renewsInTheBackgroundBeforeExpiry() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class)))
+                .thenReturn(session("first", TimeUnit.MINUTES.toMillis(1)))
+                .thenReturn(session("second", TimeUnit.HOURS.toMillis(1)));
+        AwsAssumedRoleCredentialsProvider test = new AwsAssumedRoleCredentialsProvider(sts, executor, ROLE, null, 3600);
+        test.getCredentials();
+
+        assertThat(test.getCredentials().getAWSAccessKeyId()).isEqualTo("first");
+        assertThat(executor.queued).hasSize(1);
+
+        executor.runAll();
+        assertThat(test.getCredentials().getAWSAccessKeyId()).isEqualTo("second");
+    }
+
+    @Test
+    public void expiredSessionIsRenewedBeforeUse() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class)))
+                .thenReturn(session("first", -1))
+                .thenReturn(session("second", TimeUnit.HOURS.toMillis(1)));
+        AwsAssumedRoleCredentialsProvider test = new AwsAssumedRoleCredentialsProvider(sts, executor, ROLE, null, 3600);
+        test.getCredentials();
+
+        assertThat(test.getCredentials().getAWSAccessKeyId()).isEqualTo("second");
+    }
+
+    private static AssumeRoleResult session(String accessKey, long expiresInMillis) {
+        return new AssumeRoleResult().withCredentials(new Credentials()
+                .withAccessKeyId(accessKey)
+                .withSecretAccessKey("secret")
+                .withSessionToken("token")
+                .withExpiration(new Date(System.currentTimeMillis() + expiresInMillis)));
+    }
+
+    private static class QueueingExecutor implements Executor {
+        private final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            this.queued.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> toRun = new ArrayList<Runnable>(this.queued);
+            this.queued.clear();
+            for (Runnable runnable : toRun) {
+                runnable.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import hudson.Functions;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.BatchFile;
+import hudson.tasks.Shell;
+import hudson.util.Secret;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
+import org.jenkinsci.plugins.credentialsbinding.impl.SecretBuildWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketBundleBindingTest {
+
+    private AwsBucketBundleBinding test = new AwsBucketBundleBinding("APP_", "id");
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void typeIsTheSameAsBundleCredentials() {
+        Class clazz = test.type();
+        assertThat(clazz).isSameAs(AwsBucketBundleCredentials.class);
+    }
+
+    @Test
+    public void variableNamesArePrefixedAndSanitised() {
+        assertThat(test.variableName("db.password")).isEqualTo("APP_db_password");
+        assertThat(new AwsBucketBundleBinding(null, "id").variableName("API_KEY")).isEqualTo("API_KEY");
+    }
+
+    @Test
+    public void noVariablesKnownBeforeBinding() {
+        assertThat(test.variables()).isEmpty();
+    }
+
+    @Test
+    public void declaredEntriesAreKnownBeforeBinding() throws Exception {
+        AwsBucketBundleCredentialsImpl credentials = new AwsBucketBundleCredentialsImpl(CredentialsScope.GLOBAL, "id",
+                "eu-west-1", "bucket", "bundle", false, null, false, false, null, null, null, null);
+        credentials.setEntryNames("db.password, API_KEY");
+        CredentialsProvider.lookupStores(jenkinsRule.jenkins).iterator().next().addCredentials(Domain.global(), credentials);
+
+        assertThat(test.variables()).containsOnly("APP_db_password", "APP_API_KEY");
+    }
+
+    @Test
+    public void bindAddsEveryEntry() throws Exception {
+        AwsBucketBundleCredentialsImpl credentials = mock(AwsBucketBundleCredentialsImpl.class);
+        when(credentials.getId()).thenReturn("id");
+        Map<String, Secret> entries = new TreeMap<String, Secret>();
+        entries.put("FIRST", Secret.fromString("one"));
+        entries.put("SECOND", Secret.fromString("two"));
+        when(credentials.getEntries()).thenReturn(entries);
+        CredentialsProvider.lookupStores(jenkinsRule.jenkins).iterator().next().addCredentials(Domain.global(), credentials);
+
+        FreeStyleProject p = jenkinsRule.createFreeStyleProject();
+        p.getBuildWrappersList().add(new SecretBuildWrapper(Collections.<MultiBinding<?>>singletonList(test)));
+        if (Functions.isWindows()) {
+            p.getBuildersList().add(new BatchFile("@echo off\necho %APP_FIRST%/%APP_SECOND% > auth.txt"));
+        } else {
+            p.getBuildersList().add(new Shell("set +x\necho $APP_FIRST/$APP_SECOND > auth.txt"));
+        }
+
+        FreeStyleBuild b = jenkinsRule.buildAndAssertSuccess(p);
+        assertThat(b.getWorkspace().child("auth.txt").readToString().trim()).contains("one/two");
+    }
+
+    @Test
+    public void descriptorHasCorrectDisplayName() {
+        AwsBucketBundleBinding.DescriptorImpl descriptorTest = new AwsBucketBundleBinding.DescriptorImpl();
+        assertThat(descriptorTest.getDisplayName()).isEqualTo("Aws Bucket bundle credentials");
+    }
+}
@@ -0,0 +1,112 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import hudson.util.Secret;
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.internal.util.reflection.Whitebox;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyByte;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class AwsBucketBundleCredentialsImplTest {
+
+    private AwsBucketBundleCredentialsImpl test = new AwsBucketBundleCredentialsImpl(CredentialsScope.GLOBAL, "bundleId",
+            "eu-west-1", "bucketUri", "/bundlePath", false, "mydescription", false, false, null, null, "host", "9000");
+
+    private AwsS3ClientBuilder mockClientBuilder;
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Before
+    public void setupMocks() {
+        this.mockClientBuilder = mock(AwsS3ClientBuilder.class);
+        Object document = Whitebox.getInternalState(test, "document");
+        Whitebox.setInternalState(document, "amazonS3ClientBuilder", mockClientBuilder);
+    }
+
+    @Test
+    public void parsesJsonBundles() {
+        Map<String, Secret> entries = AwsBucketBundleCredentialsImpl.parse("{\"DB_PASSWORD\":\"one\",\"API_KEY\":\"two\"}");
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get("DB_PASSWORD").getPlainText()).isEqualTo("one");
+        assertThat(entries.get("API_KEY").getPlainText()).isEqualTo("two");
+    }
+
+    @Test
+    public void parsesPropertiesBundles() {
+        Map<String, Secret> entries = AwsBucketBundleCredentialsImpl.parse("# comment\nDB_PASSWORD=one\nAPI_KEY: two\n");
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get("DB_PASSWORD").getPlainText()).isEqualTo("one");
+        assertThat(entries.get("API_KEY").getPlainText()).isEqualTo("two");
+    }
+
+    @Test
+    public void malformedJsonIsReported() {
+        try {
+            AwsBucketBundleCredentialsImpl.parse("{\"DB_PASSWORD\":");
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getCause()).isNotNull();
+        }
+    }
+
+    @Test
+    public void readsTheBundleOnceForAllEntries() throws Exception {
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        when(mockClientBuilder.build()).thenReturn(mockClient);
+        S3Object mockS3Object = mock(S3Object.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenReturn(mockS3Object);
+        S3ObjectInputStream mockS3ObjectInputStream = mock(S3ObjectInputStream.class);
+        when(mockS3Object.getObjectContent()).thenReturn(mockS3ObjectInputStream);
+        final byte[] bundle = "first=one\nsecond=two\n".getBytes("UTF-8");
+        when(mockS3ObjectInputStream.read(new byte[anyInt()], anyInt(), anyByte()))
+                .thenAnswer(new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) throws Throwable {
+                        byte[] buffer = (byte[]) invocation.getArguments()[0];
+                        System.arraycopy(bundle, 0, buffer, 0, bundle.length);
+                        return bundle.length;
+                    }
+                })
+                .thenReturn(-1);
+
+        Map<String, Secret> entries = test.getEntries();
+
+        assertThat(entries.keySet()).containsExactly("first", "second");
+        assertThat(entries.get("second").getPlainText()).isEqualTo("two");
+        verify(mockClient, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void settingsAreVisibleForTheUi() {
+        assertThat(test.getDisplayName()).isEqualTo("bucketUri:/bundlePath");
+        assertThat(test.getRegion()).isEqualTo("eu-west-1");
+        assertThat(test.getBucketName()).isEqualTo("bucketUri");
+        assertThat(test.getBucketPath()).isEqualTo("/bundlePath");
+        assertThat(test.isUseKms()).isFalse();
+        assertThat(test.getProxyHost()).isEqualTo("host");
+        assertThat(test.getProxyPort()).isEqualTo("9000");
+    }
+
+    @Test
+    public void descriptorHasADisplayName() {
+        AwsBucketBundleCredentialsImpl.DescriptorImpl descriptorTest = new AwsBucketBundleCredentialsImpl.DescriptorImpl();
+        assertThat(descriptorTest.getDisplayName()).isEqualTo("AWS Bucket Bundle Credentials");
+    }
+}
@@ -0,0 +1,73 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import hudson.security.ACL;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketBundleEntryCredentialsProviderTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Before
+    public void givenAStoredBundle() {
+        AwsBucketBundleCredentialsImpl bundle = new AwsBucketBundleCredentialsImpl(CredentialsScope.GLOBAL, "bundle",
+                "eu-west-1", "bucket", "bundle.json", false, null, false, false, null, null, null, null);
+        bundle.setEntryNames("DB_PASSWORD API_KEY");
+        SystemCredentialsProvider.getInstance().getCredentials().add(bundle);
+    }
+
+    @Test
+    public void declaredEntriesAreOfferedAsCredentials() {
+        List<AwsBucketCredentials> found = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+
+        assertThat(found).hasSize(2);
+        assertThat(found.get(0).getId()).isEqualTo("bundle/API_KEY");
+        assertThat(found.get(0).getUsername()).isEqualTo("API_KEY");
+        assertThat(found.get(1).getId()).isEqualTo("bundle/DB_PASSWORD");
+    }
+
+    @Test
+    public void onlyTheSystemCanSeeThem() {
+        List<AwsBucketCredentials> found = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, Jenkins.ANONYMOUS, Collections.<DomainRequirement>emptyList());
+
+        assertThat(found).isEmpty();
+    }
+
+    @Test
+    public void passwordIsReadThroughTheBundle() {
+        AwsBucketBundleCredentialsImpl bundle = mock(AwsBucketBundleCredentialsImpl.class);
+        when(bundle.getId()).thenReturn("mocked");
+        Map<String, Secret> entries = new TreeMap<String, Secret>();
+        entries.put("DB_PASSWORD", Secret.fromString("one"));
+        when(bundle.getEntries()).thenReturn(entries);
+
+        assertThat(new AwsBucketBundleEntryCredentials(bundle, "DB_PASSWORD").getPassword().getPlainText()).isEqualTo("one");
+        try {
+            new AwsBucketBundleEntryCredentials(bundle, "MISSING").getPassword();
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getMessage()).contains("MISSING");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import hudson.util.Secret;
+import net.sf.json.util.JSONUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.ArgumentCaptor;
+import org.mockito.internal.util.reflection.Whitebox;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketChangeListenerTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private AmazonSQS sqs;
+    private AwsBucketSecretCache cache;
+    private AwsBucketChangeListener test;
+
+    @Before
+    public void setUp() {
+        this.sqs = mock(AmazonSQS.class);
+        this.cache = new AwsBucketSecretCache(10);
+        this.test = new AwsBucketChangeListener(this.sqs, "https://queue", "https://queue|eu-west-1", this.cache);
+    }
+
+    @Test
+    public void changedObjectsAreInvalidatedAndTheMessageDeleted() {
+        this.cache.put("changed", "id1", "bucket", "/secrets/my secret", Secret.fromString("one"), null, null, 60000, 0);
+        this.cache.put("unchanged", "id2", "bucket", "/secrets/other", Secret.fromString("two"), null, null, 60000, 0);
+        this.givenQueueHolds(event("ObjectCreated:Put", "bucket", "secrets/my+secret"));
+
+        assertThat(this.test.poll()).isEqualTo(1);
+
+        assertThat(this.cache.lookup("changed")).isNull();
+        assertThat(this.cache.lookup("unchanged")).isNotNull();
+        verify(this.sqs).deleteMessage("https://queue", "handle");
+        ArgumentCaptor<ReceiveMessageRequest> request = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        verify(this.sqs).receiveMessage(request.capture());
+        assertThat(request.getValue().getWaitTimeSeconds()).isEqualTo(AwsBucketChangeListener.WAIT_SECONDS);
+    }
+
+    @Test
+    public void eventsSentThroughSnsAreUnwrapped() {
+        String sns = "{\"Type\":\"Notification\",\"Message\":"
+                + JSONUtils.quote(event("ObjectRemoved:Delete", "bucket", "secret")) + "}";
+
+        List<AwsBucketChangeListener.ChangedObject> changed = AwsBucketChangeListener.changedObjects(sns);
+
+        assertThat(changed).hasSize(1);
+        assertThat(changed.get(0).bucketName).isEqualTo("bucket");
+        assertThat(changed.get(0).key).isEqualTo("secret");
+    }
+
+    @Test
+    public void otherMessagesAreDeletedWithoutInvalidatingAnything() {
+        this.cache.put("key", "id", "bucket", "secret", Secret.fromString("one"), null, null, 60000, 0);
+        this.givenQueueHolds("{\"Event\":\"s3:TestEvent\",\"Bucket\":\"bucket\"}");
+
+        assertThat(this.test.poll()).isZero();
+
+        assertThat(this.cache.lookup("key")).isNotNull();
+        verify(this.sqs).deleteMessage("https://queue", "handle");
+    }
+
+    @Test
+    public void savingAQueueUrlStartsTheListenerAndClearingItStopsIt() {
+        AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+        try {
+            configuration.setInvalidationQueueUrl("https://sqs.eu-west-1.amazonaws.com/123456789012/changes");
+            configuration.setInvalidationQueueRegion("eu-west-1");
+            configuration.save();
+
+            assertThat(AwsBucketChangeListener.isListening()).isTrue();
+        } finally {
+            configuration.setInvalidationQueueUrl(null);
+            configuration.save();
+        }
+        assertThat(AwsBucketChangeListener.isListening()).isFalse();
+    }
+
+    @Test
+    public void clientGoesThroughTheProxy() {
+        AmazonSQS client = AwsBucketChangeListener.createClient("eu-west-1", "host", 8080);
+        try {
+            ClientConfiguration configuration = (ClientConfiguration) Whitebox.getInternalState(client, "clientConfiguration");
+            assertThat(configuration.getProxyHost()).isEqualTo("host");
+            assertThat(configuration.getProxyPort()).isEqualTo(8080);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void malformedMessagesAreIgnored() {
+        assertThat(AwsBucketChangeListener.changedObjects("not json")).isEmpty();
+    }
+
+    private void givenQueueHolds(String body) {
+        when(this.sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(
+                new ReceiveMessageResult().withMessages(new Message().withBody(body).withReceiptHandle("handle")));
+    }
+
+    private static String event(String eventName, String bucket, String key) {
+        return "{\"Records\":[{\"eventName\":\"" + eventName + "\",\"s3\":{\"bucket\":{\"name\":\"" + bucket
+                + "\"},\"object\":{\"key\":\"" + key + "\",\"eTag\":\"etag\"}}}]}";
+    }
+}
@@ -8,6 +8,8 @@ import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Item;
 import hudson.model.Run;
+import hudson.remoting.Channel;
+import hudson.slaves.DumbSlave;
 import hudson.tasks.BatchFile;
 import hudson.tasks.Shell;
 import hudson.util.Secret;
@@ -18,13 +20,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -90,6 +95,63 @@ public class AwsBucketCredentialsBindingTest {
 
     }
 
+    @Test
+    public void fetchOnAgentReadsThroughTheWorkspaceChannel() throws Exception {
+        AwsBucketAgentFetch fetch = mock(AwsBucketAgentFetch.class);
+        when(fetch.readPlainText()).thenReturn("agentpassword");
+        when(fetch.plainText()).thenCallRealMethod();
+        AwsBucketCredentialsImpl credentials = mock(AwsBucketCredentialsImpl.class);
+        when(credentials.getId()).thenReturn("id");
+        when(credentials.getUsername()).thenReturn("username");
+        when(credentials.agentFetch()).thenReturn(fetch);
+        CredentialsProvider.lookupStores(jenkinsRule.jenkins).iterator().next().addCredentials(Domain.global(), credentials);
+
+        FreeStyleProject p = jenkinsRule.createFreeStyleProject();
+        AwsBucketCredentialsBinding binding = new AwsBucketCredentialsBinding("userid", "pass", "id");
+        binding.setFetchOnAgent(true);
+        p.getBuildWrappersList().add(new SecretBuildWrapper(Collections.<MultiBinding<?>>singletonList(binding)));
+        if (Functions.isWindows()) {
+            p.getBuildersList().add(new BatchFile("@echo off\necho %userid%/%pass% > auth.txt"));
+        } else {
+            p.getBuildersList().add(new Shell("set +x\necho $userid/$pass > auth.txt"));
+        }
+
+        FreeStyleBuild b = jenkinsRule.buildAndAssertSuccess(p);
+
+        assertThat(b.getWorkspace().child("auth.txt").readToString().trim()).contains("username/agentpassword");
+        verify(credentials, never()).getPassword();
+    }
+
+    @Test
+    public void fetchOnAgentReadsAndWritesOnARealAgent() throws Exception {
+        AwsBucketCredentialsImpl credentials = mock(AwsBucketCredentialsImpl.class);
+        when(credentials.getId()).thenReturn("id");
+        when(credentials.getUsername()).thenReturn("username");
+        when(credentials.agentFetch()).thenReturn(new AgentOnlyFetch());
+        CredentialsProvider.lookupStores(jenkinsRule.jenkins).iterator().next().addCredentials(Domain.global(), credentials);
+        DumbSlave agent = jenkinsRule.createOnlineSlave();
+
+        FreeStyleProject p = jenkinsRule.createFreeStyleProject();
+        p.setAssignedNode(agent);
+        AwsBucketCredentialsBinding binding = new AwsBucketCredentialsBinding("userid", "pass", "id");
+        binding.setFetchOnAgent(true);
+        AwsBucketCredentialsFileBinding fileBinding = new AwsBucketCredentialsFileBinding("fileuserid", "secretfile", "id");
+        fileBinding.setFetchOnAgent(true);
+        p.getBuildWrappersList().add(new SecretBuildWrapper(Arrays.<MultiBinding<?>>asList(binding, fileBinding)));
+        if (Functions.isWindows()) {
+            p.getBuildersList().add(new BatchFile("@echo off\necho %userid%/%pass% > auth.txt\ntype %secretfile% > file.txt"));
+        } else {
+            p.getBuildersList().add(new Shell("set +x\necho $userid/$pass > auth.txt\ncat $secretfile > file.txt"));
+        }
+
+        FreeStyleBuild b = jenkinsRule.buildAndAssertSuccess(p);
+
+        assertThat(b.getBuiltOn()).isSameAs(agent);
+        assertThat(b.getWorkspace().child("auth.txt").readToString().trim()).contains("username/agentpassword");
+        assertThat(b.getWorkspace().child("file.txt").readToString().trim()).isEqualTo("agentpassword");
+        verify(credentials, never()).getPassword();
+    }
+
     @Test
     public void descriptorHasCorrectCredentials() {
         AwsBucketCredentialsBinding.DescriptorImpl descriptorTest = new AwsBucketCredentialsBinding.DescriptorImpl();
@@ -106,4 +168,19 @@ public class AwsBucketCredentialsBindingTest {
     }
 
 
+    /**
+     * Stands in for s3 and kms, and only gives the password when read in the agent's jvm.
+     */
+    private static class AgentOnlyFetch extends AwsBucketAgentFetch {
+        private static final long serialVersionUID = 1L;
+
+        AgentOnlyFetch() {
+            super("id", "eu-west-1", "bucket", "path", false, null, null, false, false, null, null, null, null, null);
+        }
+
+        @Override
+        public String readPlainText() {
+            return null == Channel.current() ? "controllerpassword" : "agentpassword";
+        }
+    }
 }
\ No newline at end of file
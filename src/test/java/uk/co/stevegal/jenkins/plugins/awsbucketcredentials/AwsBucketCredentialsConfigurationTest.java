@@ -0,0 +1,70 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class AwsBucketCredentialsConfigurationTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void settingsSurviveASaveFromTheConfigurePage() throws Exception {
+        AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+        configuration.setKmsRequestsPerSecond(20);
+        configuration.setKmsMaxConcurrentRequests(4);
+
+        jenkinsRule.configRoundtrip();
+
+        assertThat(AwsBucketCredentialsConfiguration.get().getKmsRequestsPerSecond()).isEqualTo(20);
+        assertThat(AwsBucketCredentialsConfiguration.get().getKmsMaxConcurrentRequests()).isEqualTo(4);
+    }
+
+    @Test
+    public void negativeLimitsMeanNoLimit() {
+        AwsBucketCredentialsConfiguration configuration = AwsBucketCredentialsConfiguration.get();
+        configuration.setKmsRequestsPerSecond(-1);
+
+        assertThat(configuration.getKmsRequestsPerSecond()).isZero();
+    }
+
+    @Test
+    public void limitsAreAppliedToTheRegionLimiter() throws Exception {
+        AwsBucketCredentialsConfiguration.get().setKmsMaxConcurrentRequests(1);
+        AwsKmsLimiter.Permit permit = AwsKmsLimiter.forRegion("us-east-2").acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<AwsKmsLimiter.Permit> second = executor.submit(new Callable<AwsKmsLimiter.Permit>() {
+                @Override
+                public AwsKmsLimiter.Permit call() throws Exception {
+                    return AwsKmsLimiter.forRegion("us-east-2").acquire();
+                }
+            });
+            try {
+                second.get(200, TimeUnit.MILLISECONDS);
+                fail("expected the configured limit to hold back the second decrypt");
+            } catch (TimeoutException e) {
+                // one already in flight
+            }
+
+            AwsBucketCredentialsConfiguration.get().setKmsMaxConcurrentRequests(0);
+            AwsKmsLimiter.forRegion("us-east-2");
+
+            second.get(5, TimeUnit.SECONDS).release();
+        } finally {
+            permit.release();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.BatchFile;
+import hudson.tasks.Shell;
+import hudson.util.Secret;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
+import org.jenkinsci.plugins.credentialsbinding.impl.SecretBuildWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketCredentialsFileBindingTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void defaultVariables() {
+        AwsBucketCredentialsFileBinding test = new AwsBucketCredentialsFileBinding(null, null, "id");
+
+        assertThat(test.variables()).containsExactlyInAnyOrder("BUCKET_USER_NAME", "BUCKET_PASSWORD_FILE");
+    }
+
+    @Test
+    public void buildReadsTheSecretFromAFileThatIsRemovedAfterwards() throws Exception {
+        AwsBucketCredentialsImpl credentials = mock(AwsBucketCredentialsImpl.class);
+        when(credentials.getId()).thenReturn("id");
+        when(credentials.getPassword()).thenReturn(Secret.fromString("password"));
+        when(credentials.getUsername()).thenReturn("username");
+        CredentialsProvider.lookupStores(jenkinsRule.jenkins).iterator().next().addCredentials(Domain.global(), credentials);
+
+        FreeStyleProject p = jenkinsRule.createFreeStyleProject();
+        p.getBuildWrappersList().add(new SecretBuildWrapper(Collections.<MultiBinding<?>>singletonList(
+                new AwsBucketCredentialsFileBinding("userid", "passfile", "id"))));
+        if (Functions.isWindows()) {
+            p.getBuildersList().add(new BatchFile("@echo off\ntype %passfile% > auth.txt"));
+        } else {
+            p.getBuildersList().add(new Shell("set +x\ncat $passfile > auth.txt"));
+        }
+
+        FreeStyleBuild b = jenkinsRule.buildAndAssertSuccess(p);
+
+        assertThat(b.getWorkspace().child("auth.txt").readToString().trim()).isEqualTo("password");
+        FilePath secrets = AwsBucketCredentialsFileBinding.secretsDir(b.getWorkspace());
+        assertThat(secrets.exists() ? secrets.list() : Collections.<FilePath>emptyList()).isEmpty();
+    }
+
+    @Test
+    public void descriptorHasCorrectDisplayName() {
+        assertThat(new AwsBucketCredentialsFileBinding.DescriptorImpl().getDisplayName())
+                .isEqualTo("Aws Bucket credentials (file)");
+    }
+}
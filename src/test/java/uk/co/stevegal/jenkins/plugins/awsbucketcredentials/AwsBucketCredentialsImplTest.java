@@ -7,12 +7,17 @@ import com.amazonaws.services.kms.AWSKMSClient;
 import com.amazonaws.services.kms.model.DecryptRequest;
 import com.amazonaws.services.kms.model.DecryptResult;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.google.common.util.concurrent.ListenableFuture;
+import hudson.Util;
 import hudson.util.Secret;
 import junit.framework.TestCase;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -23,10 +28,17 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.*;
+import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -52,6 +64,7 @@ public class AwsBucketCredentialsImplTest {
 
     @Before
     public void setupMocks() {
+        resetSharedState();
         this.mockClientBuilder = mock(AwsS3ClientBuilder.class);
         this.mockKmsClientBuilder = mock(AwsKmsClientBuilder.class);
         Whitebox.setInternalState(test, "amazonS3ClientBuilder", mockClientBuilder);
@@ -59,6 +72,58 @@ public class AwsBucketCredentialsImplTest {
 
     }
 
+    @After
+    public void clearSharedState() {
+        resetSharedState();
+    }
+
+    /**
+     * The caches, breakers and limiters are shared by every credential in the jvm, and most tests here read the
+     * same object through the same credential.
+     */
+    private static void resetSharedState() {
+        AwsBucketSecretCache.get().clear();
+        AwsDataKeyCache.get().clear();
+        AwsCircuitBreaker.forgetAll();
+        AwsKmsLimiter.forgetAll();
+    }
+
+    @Test
+    public void afterRestartUnchangedObjectIsDecryptedFromDisk() throws Exception {
+        System.setProperty(AwsBucketDiskCache.ENABLED_PROPERTY, "true");
+        try {
+            AmazonS3Client mockClient = mock(AmazonS3Client.class);
+            AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+            this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setHeader(Headers.ETAG, "etag1");
+            S3Object s3Object = mock(S3Object.class);
+            S3ObjectInputStream s3ObjectInputStream = mock(S3ObjectInputStream.class);
+            when(s3Object.getObjectContent()).thenReturn(s3ObjectInputStream);
+            when(s3Object.getObjectMetadata()).thenReturn(metadata);
+            when(s3ObjectInputStream.read(new byte[anyInt()], anyInt(), anyByte()))
+                    .thenAnswer(new WriteBufferAnswer("encryptedPassword".getBytes()))
+                    .thenReturn(-1);
+            when(mockClient.getObject(any(GetObjectRequest.class))).thenReturn(s3Object).thenReturn(null);
+
+            test.getPassword();
+            AwsBucketSecretCache.get().clear();
+            Secret afterRestart = test.getPassword();
+
+            assertThat(afterRestart.getPlainText()).isEqualTo("password");
+            ArgumentCaptor<GetObjectRequest> capturedObjectRequest = ArgumentCaptor.forClass(GetObjectRequest.class);
+            verify(mockClient, times(2)).getObject(capturedObjectRequest.capture());
+            assertThat(capturedObjectRequest.getAllValues().get(1).getNonmatchingETagConstraints()).containsExactly("etag1");
+            ArgumentCaptor<DecryptRequest> capturedDecryptRequest = ArgumentCaptor.forClass(DecryptRequest.class);
+            verify(mockKmsClient, times(2)).decrypt(capturedDecryptRequest.capture());
+            assertThat(new String(capturedDecryptRequest.getAllValues().get(1).getCiphertextBlob().array()))
+                    .isEqualTo("encryptedPassword");
+        } finally {
+            System.clearProperty(AwsBucketDiskCache.ENABLED_PROPERTY);
+            Util.deleteRecursive(new File(jenkinsRule.jenkins.getRootDir(), AwsBucketDiskCache.DIRECTORY_NAME));
+        }
+    }
+
     @Test
     public void calculatesMeaningfulDisplayName() {
         String displayName = test.getDisplayName();
@@ -78,6 +143,22 @@ public class AwsBucketCredentialsImplTest {
         assertThat(username).isEqualTo("username");
     }
 
+    @Test
+    public void roleIsPassedToBothClientBuilders() {
+        AwsBucketCredentialsImpl credentials = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, "id", "EU_WEST_1",
+                "bucketUri", "/bucketPath", "username", false, "description", true, false, null, null, null, null);
+
+        credentials.setRoleArn(" arn:aws:iam::123456789012:role/jenkins ");
+        credentials.setExternalId("");
+
+        assertThat(credentials.getRoleArn()).isEqualTo("arn:aws:iam::123456789012:role/jenkins");
+        assertThat(credentials.getExternalId()).isNull();
+        assertThat(Whitebox.getInternalState(Whitebox.getInternalState(credentials, "amazonS3ClientBuilder"), "roleArn"))
+                .isEqualTo("arn:aws:iam::123456789012:role/jenkins");
+        assertThat(Whitebox.getInternalState(Whitebox.getInternalState(credentials, "amazonKmsClientBuilder"), "roleArn"))
+                .isEqualTo("arn:aws:iam::123456789012:role/jenkins");
+    }
+
     @Test
     public void passwordUsesTheS3Bucket() throws Exception {
         S3Object mockS3Object = mock(S3Object.class);
@@ -393,6 +474,352 @@ public class AwsBucketCredentialsImplTest {
         verify(mockS3Object).close();
     }
 
+    @Test
+    public void cachesDecryptedSecretWhenTtlSet() throws Exception {
+        test.setCacheTtlSeconds(60);
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+
+        Secret first = test.getPassword();
+        Secret second = test.getPassword();
+
+        assertThat(first.getPlainText()).isEqualTo("password");
+        assertThat(second.getPlainText()).isEqualTo("password");
+        verify(mockClient, times(1)).getObject(any(GetObjectRequest.class));
+        verify(mockKmsClient, times(1)).decrypt(any(DecryptRequest.class));
+    }
+
+    @Test
+    public void asyncPasswordReadsAndDecryptsOffTheCallingThread() throws Exception {
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+
+        Secret secret = test.getPasswordAsync().get(10, TimeUnit.SECONDS);
+
+        assertThat(secret.getPlainText()).isEqualTo("password");
+        verify(mockClient, times(1)).getObject(any(GetObjectRequest.class));
+        verify(mockKmsClient, times(1)).decrypt(any(DecryptRequest.class));
+    }
+
+    @Test
+    public void asyncPasswordIsAlreadyDoneWhenCached() throws Exception {
+        test.setCacheTtlSeconds(60);
+        AwsBucketSecretCache.get().clear();
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return s3Object("encryptedPassword".getBytes());
+            }
+        });
+
+        ListenableFuture<Secret> first = test.getPasswordAsync();
+        assertThat(first.isDone()).isFalse();
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS).getPlainText()).isEqualTo("password");
+        ListenableFuture<Secret> second = test.getPasswordAsync();
+
+        assertThat(second.isDone()).isTrue();
+        assertThat(second.get().getPlainText()).isEqualTo("password");
+        verify(mockClient, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void doesNotCacheWithoutTtl() throws Exception {
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+
+        test.getPassword();
+        test.getPassword();
+
+        verify(mockClient, times(2)).getObject(any(GetObjectRequest.class));
+        verify(mockKmsClient, times(2)).decrypt(any(DecryptRequest.class));
+    }
+
+    @Test
+    public void pinnedVersionIsReadOnceAndThenServedFromMemory() throws Exception {
+        test.setVersionId(" version1 ");
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+
+        Secret first = test.getPassword();
+        Secret second = test.getPassword();
+
+        assertThat(first.getPlainText()).isEqualTo("password");
+        assertThat(second.getPlainText()).isEqualTo("password");
+        ArgumentCaptor<GetObjectRequest> capturedObjectRequest = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockClient, times(1)).getObject(capturedObjectRequest.capture());
+        assertThat(capturedObjectRequest.getValue().getVersionId()).isEqualTo("version1");
+        verify(mockKmsClient, times(1)).decrypt(any(DecryptRequest.class));
+    }
+
+    @Test
+    public void connectionsResetWhileReadingTheBodyOpenTheBreaker() throws Exception {
+        // a region of its own, so that this breaker is not shared with other tests
+        AwsBucketCredentialsImpl credentials = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, "resetId",
+                "test-body-reset", "bucketUri", "/bucketPath", "username", false, "description", false, false,
+                null, null, null, null);
+        Whitebox.setInternalState(credentials, "amazonS3ClientBuilder", mockClientBuilder);
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        when(mockClientBuilder.build()).thenReturn(mockClient);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                S3Object s3Object = mock(S3Object.class);
+                S3ObjectInputStream content = mock(S3ObjectInputStream.class);
+                when(s3Object.getObjectContent()).thenReturn(content);
+                when(content.read(new byte[anyInt()], anyInt(), anyInt())).thenThrow(new SocketException("connection reset"));
+                return s3Object;
+            }
+        });
+        for (int i = 0; i < AwsCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            try {
+                credentials.getPassword();
+                TestCase.fail("should have thrown exception");
+            } catch (AwsBucketReadingException e) {
+                assertThat(e.getCause()).isInstanceOf(SocketException.class);
+            }
+        }
+
+        try {
+            credentials.getPassword();
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getMessage()).contains("after repeated failures");
+        }
+        verify(mockClient, times(AwsCircuitBreaker.DEFAULT_FAILURE_THRESHOLD)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void changeNotifiedDuringALoadIsNotOverwrittenByIt() throws Exception {
+        test.setCacheTtlSeconds(3600);
+        AwsBucketSecretCache.get().clear();
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                // the object is rotated, and the notification handled, while this slow read is still under way
+                AwsBucketSecretCache.get().invalidateObject("bucketUri", "bucketPath");
+                return s3Object("encryptedPassword".getBytes());
+            }
+        });
+
+        test.getPassword();
+        assertThat(AwsBucketSecretCache.get().size()).isZero();
+        test.getPassword();
+
+        verify(mockClient, times(2)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void resavingAnUnchangedCredentialKeepsItsCachedSecret() throws Exception {
+        test.setCacheTtlSeconds(60);
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+        test.getPassword();
+
+        this.resaved().getPassword();
+
+        verify(mockClient, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void editedCredentialMissesTheCache() throws Exception {
+        test.setCacheTtlSeconds(60);
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+        test.getPassword();
+
+        AwsBucketCredentialsImpl edited = this.resaved();
+        edited.setRoleArn("arn:aws:iam::123456789012:role/other");
+        Whitebox.setInternalState(edited, "amazonS3ClientBuilder", mockClientBuilder);
+        Whitebox.setInternalState(edited, "amazonKmsClientBuilder", mockKmsClientBuilder);
+        edited.getPassword();
+
+        verify(mockClient, times(2)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void unchangedObjectIsNotDecryptedAgain() throws Exception {
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient, "encryptedPassword", "password");
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader(Headers.ETAG, "etag1");
+        S3Object s3Object = mock(S3Object.class);
+        S3ObjectInputStream s3ObjectInputStream = mock(S3ObjectInputStream.class);
+        when(s3Object.getObjectContent()).thenReturn(s3ObjectInputStream);
+        when(s3Object.getObjectMetadata()).thenReturn(metadata);
+        when(s3ObjectInputStream.read(new byte[anyInt()], anyInt(), anyByte()))
+                .thenAnswer(new WriteBufferAnswer("encryptedPassword".getBytes()))
+                .thenReturn(-1);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenReturn(s3Object).thenReturn(null);
+
+        Secret first = test.getPassword();
+        Secret second = test.getPassword();
+
+        assertThat(first.getPlainText()).isEqualTo("password");
+        assertThat(second.getPlainText()).isEqualTo("password");
+        ArgumentCaptor<GetObjectRequest> capturedObjectRequest = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockClient, times(2)).getObject(capturedObjectRequest.capture());
+        assertThat(capturedObjectRequest.getAllValues().get(0).getNonmatchingETagConstraints()).isEmpty();
+        assertThat(capturedObjectRequest.getAllValues().get(1).getNonmatchingETagConstraints()).containsExactly("etag1");
+        verify(mockKmsClient, times(1)).decrypt(any(DecryptRequest.class));
+    }
+
+    @Test
+    public void envelopeEncryptedSecretsAreDecryptedLocally() throws Exception {
+        final byte[] dataKey = new byte[32];
+        dataKey[0] = 42;
+        AmazonS3Client mockClient = mock(AmazonS3Client.class);
+        AWSKMSClient mockKmsClient = mock(AWSKMSClient.class);
+        this.givenBucketContains(mockClient, mockKmsClient,
+                new String(AwsEnvelopeTest.envelope(dataKey, "wrappedKey".getBytes("UTF-8"), "password"), "UTF-8"), "unused");
+        when(mockKmsClient.decrypt(any(DecryptRequest.class))).thenAnswer(new Answer<DecryptResult>() {
+            @Override
+            public DecryptResult answer(InvocationOnMock invocation) throws Throwable {
+                return new DecryptResult().withPlaintext(ByteBuffer.wrap(dataKey.clone()));
+            }
+        });
+
+        Secret secret = test.getPassword();
+
+        assertThat(secret.getPlainText()).isEqualTo("password");
+        ArgumentCaptor<DecryptRequest> capturedDecryptRequest = ArgumentCaptor.forClass(DecryptRequest.class);
+        verify(mockKmsClient).decrypt(capturedDecryptRequest.capture());
+        assertThat(new String(capturedDecryptRequest.getValue().getCiphertextBlob().array(), "UTF-8")).isEqualTo("wrappedKey");
+        assertThat(capturedDecryptRequest.getValue().getEncryptionContext()).containsEntry("someEncryptContextKey", "kmsEncryptContextValue");
+    }
+
+    @Test
+    public void credentialsOnDifferentRolesNeverShareReadsOrDataKeys() throws Exception {
+        final byte[] dataKey = new byte[32];
+        dataKey[0] = 7;
+        final byte[] envelope = AwsEnvelopeTest.envelope(dataKey, "sharedWrappedKey".getBytes("UTF-8"), "password");
+        AmazonS3Client firstS3Client = mock(AmazonS3Client.class);
+        AmazonS3Client secondS3Client = mock(AmazonS3Client.class);
+        AWSKMSClient firstKmsClient = mock(AWSKMSClient.class);
+        AWSKMSClient secondKmsClient = mock(AWSKMSClient.class);
+        final AwsBucketCredentialsImpl first = onRole("first", "arn:aws:iam::123456789012:role/first",
+                firstS3Client, firstKmsClient, dataKey);
+        AwsBucketCredentialsImpl second = onRole("second", "arn:aws:iam::123456789012:role/second",
+                secondS3Client, secondKmsClient, dataKey);
+        final CountDownLatch firstReading = new CountDownLatch(1);
+        final CountDownLatch secondReading = new CountDownLatch(1);
+        // the first read is held open until the second starts, so that the second could join it if it were shared
+        when(firstS3Client.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                firstReading.countDown();
+                secondReading.await(5, TimeUnit.SECONDS);
+                return s3Object(envelope);
+            }
+        });
+        when(secondS3Client.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                secondReading.countDown();
+                return s3Object(envelope);
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Secret> firstPassword = executor.submit(new Callable<Secret>() {
+                @Override
+                public Secret call() {
+                    return first.getPassword();
+                }
+            });
+            assertThat(firstReading.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(second.getPassword().getPlainText()).isEqualTo("password");
+            assertThat(firstPassword.get(10, TimeUnit.SECONDS).getPlainText()).isEqualTo("password");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(firstS3Client, times(1)).getObject(any(GetObjectRequest.class));
+        verify(secondS3Client, times(1)).getObject(any(GetObjectRequest.class));
+        verify(firstKmsClient, times(1)).decrypt(any(DecryptRequest.class));
+        verify(secondKmsClient, times(1)).decrypt(any(DecryptRequest.class));
+    }
+
+    private void givenBucketContains(AmazonS3Client mockClient, AWSKMSClient mockKmsClient, String encrypted,
+                                     final String plainText) throws Exception {
+        when(mockClientBuilder.build()).thenReturn(mockClient);
+        when(mockKmsClientBuilder.build()).thenReturn(mockKmsClient);
+        final byte[] encryptedBytes = encrypted.getBytes();
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                return s3Object(encryptedBytes);
+            }
+        });
+        when(mockKmsClient.decrypt(any(DecryptRequest.class))).thenAnswer(new Answer<DecryptResult>() {
+            @Override
+            public DecryptResult answer(InvocationOnMock invocation) throws Throwable {
+                DecryptResult result = new DecryptResult();
+                result.setPlaintext(Charset.forName("UTF-8").newEncoder().encode(CharBuffer.wrap(plainText)));
+                return result;
+            }
+        });
+    }
+
+    private static S3Object s3Object(byte[] content) throws IOException {
+        S3Object mockS3Object = mock(S3Object.class);
+        S3ObjectInputStream mockS3ObjectInputStream = mock(S3ObjectInputStream.class);
+        when(mockS3Object.getObjectContent()).thenReturn(mockS3ObjectInputStream);
+        when(mockS3ObjectInputStream.read(new byte[anyInt()], anyInt(), anyByte()))
+                .thenAnswer(new WriteBufferAnswer(content))
+                .thenReturn(-1);
+        return mockS3Object;
+    }
+
+    /**
+     * @return the test credential as it is constructed again when saved from the ui without changes
+     */
+    private AwsBucketCredentialsImpl resaved() {
+        AwsBucketCredentialsImpl credentials = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, "myId",
+                "EU_WEST_1", "bucketUri", "/bucketPath", "username", true,
+                "mydescription", true, true, "someEncryptContextKey", "kmsEncryptContextValue", "host", "9000");
+        credentials.setCacheTtlSeconds(60);
+        Whitebox.setInternalState(credentials, "amazonS3ClientBuilder", mockClientBuilder);
+        Whitebox.setInternalState(credentials, "amazonKmsClientBuilder", mockKmsClientBuilder);
+        return credentials;
+    }
+
+    private static AwsBucketCredentialsImpl onRole(String id, String roleArn, AmazonS3Client s3Client,
+                                                   final AWSKMSClient kmsClient, final byte[] dataKey) {
+        AwsBucketCredentialsImpl credentials = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, id, "EU_WEST_1",
+                "bucketUri", "/bucketPath", "username", false, "description", true, false, null, null, null, null);
+        credentials.setRoleArn(roleArn);
+        AwsS3ClientBuilder s3ClientBuilder = mock(AwsS3ClientBuilder.class);
+        AwsKmsClientBuilder kmsClientBuilder = mock(AwsKmsClientBuilder.class);
+        when(s3ClientBuilder.build()).thenReturn(s3Client);
+        when(kmsClientBuilder.build()).thenReturn(kmsClient);
+        when(kmsClient.decrypt(any(DecryptRequest.class))).thenAnswer(new Answer<DecryptResult>() {
+            @Override
+            public DecryptResult answer(InvocationOnMock invocation) throws Throwable {
+                return new DecryptResult().withPlaintext(ByteBuffer.wrap(dataKey.clone()));
+            }
+        });
+        Whitebox.setInternalState(credentials, "amazonS3ClientBuilder", s3ClientBuilder);
+        Whitebox.setInternalState(credentials, "amazonKmsClientBuilder", kmsClientBuilder);
+        return credentials;
+    }
+
     private byte[] serialise(Serializable object) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(baos);
@@ -0,0 +1,85 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.google.common.util.concurrent.Futures;
+import hudson.Functions;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.BatchFile;
+import hudson.tasks.Shell;
+import hudson.util.Secret;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
+import org.jenkinsci.plugins.credentialsbinding.impl.SecretBuildWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketCredentialsPrefetcherTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void splitsCredentialIds() {
+        AwsBucketCredentialsPrefetchProperty property = new AwsBucketCredentialsPrefetchProperty(" one, two\nthree ");
+        assertThat(property.credentialIdList()).containsExactly("one", "two", "three");
+    }
+
+    @Test
+    public void blankIdsPrefetchNothing() {
+        AwsBucketCredentialsPrefetchProperty property = new AwsBucketCredentialsPrefetchProperty("  ");
+        assertThat(property.getCredentialIds()).isNull();
+        assertThat(property.credentialIdList()).isEmpty();
+    }
+
+    @Test
+    public void bindingUsesThePrefetchedPassword() throws Exception {
+        AwsBucketCredentialsImpl credentials = mock(AwsBucketCredentialsImpl.class);
+        when(credentials.getId()).thenReturn("id");
+        when(credentials.getPasswordAsync()).thenReturn(Futures.immediateFuture(Secret.fromString("password")));
+        when(credentials.getUsername()).thenReturn("username");
+        CredentialsProvider.lookupStores(jenkinsRule.jenkins).iterator().next().addCredentials(Domain.global(), credentials);
+
+        FreeStyleProject p = jenkinsRule.createFreeStyleProject();
+        p.addProperty(new AwsBucketCredentialsPrefetchProperty("id"));
+        p.getBuildWrappersList().add(new SecretBuildWrapper(Collections.<MultiBinding<?>>singletonList(new AwsBucketCredentialsBinding("userid", "pass", "id"))));
+        if (Functions.isWindows()) {
+            p.getBuildersList().add(new BatchFile("@echo off\necho %userid%/%pass% > auth.txt"));
+        } else {
+            p.getBuildersList().add(new Shell("set +x\necho $userid/$pass > auth.txt"));
+        }
+
+        FreeStyleBuild b = jenkinsRule.buildAndAssertSuccess(p);
+
+        assertThat(b.getWorkspace().child("auth.txt").readToString().trim()).contains("username/password");
+        jenkinsRule.assertLogContains("Prefetching 1 AWS bucket credentials", b);
+        verify(credentials, times(1)).getPasswordAsync();
+        verify(credentials, never()).getPassword();
+    }
+
+    @Test
+    public void anotherCredentialWithTheSameIdIsReadItself() throws Exception {
+        AwsBucketCredentialsImpl prefetched = mock(AwsBucketCredentialsImpl.class);
+        when(prefetched.getId()).thenReturn("id");
+        when(prefetched.getPasswordAsync()).thenReturn(Futures.immediateFuture(Secret.fromString("folder")));
+        AwsBucketCredentialsImpl other = mock(AwsBucketCredentialsImpl.class);
+        when(other.getId()).thenReturn("id");
+        when(other.getPassword()).thenReturn(Secret.fromString("global"));
+        FreeStyleBuild run = mock(FreeStyleBuild.class);
+
+        AwsBucketCredentialsPrefetcher.prefetch(run, Collections.<AwsBucketCredentials>singletonList(prefetched));
+
+        assertThat(AwsBucketCredentialsPrefetcher.passwordFor(run, other).getPlainText()).isEqualTo("global");
+        assertThat(AwsBucketCredentialsPrefetcher.passwordFor(run, prefetched).getPlainText()).isEqualTo("folder");
+    }
+}
@@ -0,0 +1,53 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.util.Secret;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class AwsBucketCredentialsSaveListenerTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private AwsBucketSecretCache cache = new AwsBucketSecretCache(10);
+    private AwsBucketCredentialsSaveListener test = new AwsBucketCredentialsSaveListener();
+
+    @Test
+    public void removedAndReplacedCredentialsAreDropped() {
+        AwsBucketCredentials kept = mock(AwsBucketCredentials.class);
+        Map<String, AwsBucketCredentials> before = new HashMap<String, AwsBucketCredentials>();
+        before.put("kept", kept);
+        before.put("removed", mock(AwsBucketCredentials.class));
+        before.put("replaced", mock(AwsBucketCredentials.class));
+        test.changed(before, cache);
+        cache.put("a", "kept", "bucket", "a", Secret.fromString("one"), null, null, 60000, 0);
+        cache.put("b", "removed", "bucket", "b", Secret.fromString("two"), null, null, 60000, 0);
+        cache.put("c", "replaced", "bucket", "c", Secret.fromString("three"), null, null, 60000, 0);
+        Map<String, AwsBucketCredentials> after = new HashMap<String, AwsBucketCredentials>();
+        after.put("kept", kept);
+        after.put("replaced", mock(AwsBucketCredentials.class));
+
+        test.changed(after, cache);
+
+        assertThat(cache.lookup("a")).isNotNull();
+        assertThat(cache.lookup("b")).isNull();
+        assertThat(cache.lookup("c")).isNull();
+    }
+
+    @Test
+    public void firstSaveDropsNothing() {
+        cache.put("a", "id", "bucket", "a", Secret.fromString("one"), null, null, 60000, 0);
+
+        test.changed(Collections.<String, AwsBucketCredentials>emptyMap(), cache);
+
+        assertThat(cache.lookup("a")).isNotNull();
+    }
+}
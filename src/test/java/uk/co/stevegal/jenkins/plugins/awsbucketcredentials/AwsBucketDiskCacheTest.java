@@ -0,0 +1,95 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsBucketDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private AwsBucketDiskCache cache;
+
+    @Before
+    public void setup() {
+        this.directory = new File(folder.getRoot(), "cache");
+        this.cache = new AwsBucketDiskCache(this.directory);
+    }
+
+    @Test
+    public void storedObjectCanBeReadBack() {
+        cache.store("key", new AwsBucketObject("ciphertext".getBytes(), "etag1", "version1"));
+
+        AwsBucketObject stored = cache.lookup("key");
+
+        assertThat(new String(stored.getContent())).isEqualTo("ciphertext");
+        assertThat(stored.getETag()).isEqualTo("etag1");
+        assertThat(stored.getVersionId()).isEqualTo("version1");
+    }
+
+    @Test
+    public void missingObjectIsNull() {
+        assertThat(cache.lookup("key")).isNull();
+    }
+
+    @Test
+    public void objectsWithoutAnETagAreNotStored() {
+        cache.store("key", new AwsBucketObject("ciphertext".getBytes(), null, null));
+
+        assertThat(cache.lookup("key")).isNull();
+    }
+
+    @Test
+    public void storingLeavesOnlyTheObjectsFile() {
+        cache.store("key", new AwsBucketObject("one".getBytes(), "etag1", null));
+        cache.store("key", new AwsBucketObject("two".getBytes(), "etag2", null));
+
+        assertThat(this.directory.listFiles()).hasSize(1);
+        assertThat(cache.lookup("key").getETag()).isEqualTo("etag2");
+    }
+
+    @Test
+    public void filesUnusedSinceTheCutoffAreDeleted() {
+        cache.store("unused", new AwsBucketObject("ciphertext".getBytes(), "etag1", null));
+        cache.store("used", new AwsBucketObject("ciphertext".getBytes(), "etag1", null));
+        long cutoff = System.currentTimeMillis() - 1000;
+        for (File file : this.directory.listFiles()) {
+            file.setLastModified(cutoff - 60000);
+        }
+        cache.lookup("used");
+
+        assertThat(cache.deleteUnusedSince(cutoff)).isEqualTo(1);
+
+        assertThat(cache.lookup("unused")).isNull();
+        assertThat(cache.lookup("used")).isNotNull();
+    }
+
+    @Test
+    public void corruptFileIsIgnoredAndRemoved() throws Exception {
+        cache.store("key", new AwsBucketObject("ciphertext".getBytes(), "etag1", null));
+        File file = this.directory.listFiles()[0];
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2});
+        out.close();
+
+        assertThat(cache.lookup("key")).isNull();
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void disabledCacheStoresNothing() {
+        AwsBucketDiskCache disabled = new AwsBucketDiskCache(null);
+
+        disabled.store("key", new AwsBucketObject("ciphertext".getBytes(), "etag1", null));
+
+        assertThat(disabled.lookup("key")).isNull();
+    }
+}
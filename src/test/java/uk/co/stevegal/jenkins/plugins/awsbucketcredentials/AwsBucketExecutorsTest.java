@@ -0,0 +1,60 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.util.Secret;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketExecutorsTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void startsEveryReadBeforeAnyHasFinished() throws Exception {
+        SettableFuture<Secret> slow = SettableFuture.create();
+        AwsBucketCredentials first = this.credentials("first", slow);
+        AwsBucketCredentials second = this.credentials("second", Futures.immediateFuture(Secret.fromString("two")));
+
+        Map<String, ListenableFuture<Secret>> passwords = AwsBucketExecutors.getPasswords(Arrays.asList(first, second));
+
+        assertThat(passwords.keySet()).containsExactly("first", "second");
+        assertThat(passwords.get("first").isDone()).isFalse();
+        assertThat(passwords.get("second").get().getPlainText()).isEqualTo("two");
+        slow.set(Secret.fromString("one"));
+        assertThat(passwords.get("first").get().getPlainText()).isEqualTo("one");
+    }
+
+    @Test
+    public void s3AndKmsHaveSeparatePools() {
+        assertThat(AwsBucketExecutors.s3()).isNotSameAs(AwsBucketExecutors.kms());
+    }
+
+    @Test
+    public void otherCredentialsAreReadOnTheS3Pool() throws Exception {
+        AwsBucketCredentials credentials = mock(AwsBucketCredentials.class);
+        when(credentials.getPassword()).thenReturn(Secret.fromString("password"));
+
+        ListenableFuture<Secret> password = AwsBucketExecutors.getPasswordAsync(credentials);
+
+        assertThat(password.get(10, TimeUnit.SECONDS).getPlainText()).isEqualTo("password");
+    }
+
+    private AwsBucketCredentials credentials(String id, ListenableFuture<Secret> password) {
+        AwsBucketCredentialsImpl credentials = mock(AwsBucketCredentialsImpl.class);
+        when(credentials.getId()).thenReturn(id);
+        when(credentials.getPasswordAsync()).thenReturn(password);
+        return credentials;
+    }
+}
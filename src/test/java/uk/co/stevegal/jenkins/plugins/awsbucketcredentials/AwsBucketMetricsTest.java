@@ -0,0 +1,79 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonServiceException;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsBucketMetricsTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void successfulCallsAreTimedPerRegion() {
+        MetricRegistry registry = AwsBucketMetrics.registry();
+        long regionCount = registry.timer("aws-bucket-credentials.s3.get.region.eu-west-1").getCount();
+
+        AwsBucketMetrics.start(AwsBucketMetrics.S3_GET, "eu-west-1").success();
+
+        assertThat(registry.timer("aws-bucket-credentials.s3.get.region.eu-west-1").getCount()).isEqualTo(regionCount + 1);
+    }
+
+    @Test
+    public void throttledFailuresAreCountedSeparately() {
+        MetricRegistry registry = AwsBucketMetrics.registry();
+        long failures = registry.counter("aws-bucket-credentials.kms.decrypt.failures.region.default").getCount();
+        long throttles = registry.counter("aws-bucket-credentials.kms.decrypt.throttled.region.default").getCount();
+        AmazonServiceException throttled = new AmazonServiceException("slow down");
+        throttled.setErrorCode("ThrottlingException");
+
+        AwsBucketMetrics.start(AwsBucketMetrics.KMS_DECRYPT, null).failure(throttled);
+        AwsBucketMetrics.start(AwsBucketMetrics.KMS_DECRYPT, null).failure(new RuntimeException());
+
+        assertThat(registry.counter("aws-bucket-credentials.kms.decrypt.failures.region.default").getCount()).isEqualTo(failures + 2);
+        assertThat(registry.counter("aws-bucket-credentials.kms.decrypt.throttled.region.default").getCount()).isEqualTo(throttles + 1);
+    }
+
+    @Test
+    public void cacheHitsAndMissesAreCounted() {
+        MetricRegistry registry = AwsBucketMetrics.registry();
+        long hits = registry.counter("aws-bucket-credentials.cache.hit.region.us-east-2").getCount();
+        long misses = registry.counter("aws-bucket-credentials.cache.miss.region.us-east-2").getCount();
+
+        AwsBucketMetrics.cacheHit("us-east-2");
+        AwsBucketMetrics.cacheHit("us-east-2");
+        AwsBucketMetrics.cacheMiss("us-east-2");
+
+        assertThat(registry.counter("aws-bucket-credentials.cache.hit.region.us-east-2").getCount()).isEqualTo(hits + 2);
+        assertThat(registry.counter("aws-bucket-credentials.cache.miss.region.us-east-2").getCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void bytesReadAreRecorded() {
+        AwsBucketMetrics.bytesRead("eu-west-2", 1024);
+
+        assertThat(AwsBucketMetrics.registry().histogram("aws-bucket-credentials.s3.bytes.region.eu-west-2")
+                .getSnapshot().getMax()).isEqualTo(1024);
+    }
+
+    @Test
+    public void throttlingIsRecognised() {
+        AmazonServiceException slowDown = new AmazonServiceException("slow down");
+        slowDown.setErrorCode("SlowDown");
+        slowDown.setStatusCode(503);
+        AmazonServiceException tooMany = new AmazonServiceException("too many");
+        tooMany.setStatusCode(429);
+        AmazonServiceException denied = new AmazonServiceException("denied");
+        denied.setErrorCode("AccessDenied");
+        denied.setStatusCode(403);
+
+        assertThat(AwsErrors.isThrottling(slowDown)).isTrue();
+        assertThat(AwsErrors.isThrottling(tooMany)).isTrue();
+        assertThat(AwsErrors.isThrottling(denied)).isFalse();
+        assertThat(AwsErrors.isThrottling(new RuntimeException())).isFalse();
+    }
+}
@@ -0,0 +1,102 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class AwsBucketObjectReaderTest {
+
+    @Test
+    public void readsExactlyTheContentLength() throws Exception {
+        byte[] content = bytes(5000);
+
+        byte[] read = AwsBucketObjectReader.read(new ByteArrayInputStream(content), content.length, 10000);
+
+        assertThat(read).isEqualTo(content);
+    }
+
+    @Test
+    public void readsContentOfUnknownLength() throws Exception {
+        byte[] content = bytes(5000);
+
+        byte[] read = AwsBucketObjectReader.read(new ByteArrayInputStream(content), -1, 10000);
+
+        assertThat(read).isEqualTo(content);
+    }
+
+    @Test
+    public void readsEmptyContent() throws Exception {
+        assertThat(AwsBucketObjectReader.read(new ByteArrayInputStream(new byte[0]), -1, 10000)).isEmpty();
+    }
+
+    @Test
+    public void copesWithShortReads() throws Exception {
+        byte[] content = bytes(3000);
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+
+        assertThat(AwsBucketObjectReader.read(trickle, content.length, 10000)).isEqualTo(content);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsADeclaredLengthOverTheLimit() throws Exception {
+        AwsBucketObjectReader.read(new ByteArrayInputStream(bytes(10)), 5000, 1000);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUndeclaredContentOverTheLimit() throws Exception {
+        AwsBucketObjectReader.read(new ByteArrayInputStream(bytes(5000)), -1, 1000);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsContentLongerThanDeclared() throws Exception {
+        AwsBucketObjectReader.read(new ByteArrayInputStream(bytes(100)), 50, 1000);
+    }
+
+    @Test
+    public void zeroesItsBufferWhenReadingFails() {
+        final byte[][] buffer = new byte[1][];
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                return 1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (off > 0) {
+                    throw new IOException("connection reset");
+                }
+                buffer[0] = b;
+                Arrays.fill(b, off, off + 10, (byte) 42);
+                return 10;
+            }
+        };
+
+        try {
+            AwsBucketObjectReader.read(failing, 100, 1000);
+            fail("expected the read to fail");
+        } catch (IOException e) {
+            assertThat(buffer[0]).containsOnly((byte) 0);
+        }
+    }
+
+    private static byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
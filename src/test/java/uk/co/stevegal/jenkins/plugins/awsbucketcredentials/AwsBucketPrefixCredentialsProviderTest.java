@@ -0,0 +1,137 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.internal.util.reflection.Whitebox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketPrefixCredentialsProviderTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Before
+    public void givenAListedPrefix() {
+        AwsBucketPrefixCredentialsProvider.forgetSnapshot();
+        AwsBucketCredentialsConfiguration.get().setPrefixes(Collections.singletonList(listed("jenkins/", "jenkins/db")));
+    }
+
+    @Test
+    public void objectsUnderThePrefixAreOfferedAsCredentials() {
+        List<AwsBucketCredentials> found = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+
+        assertThat(found).hasSize(1);
+        assertThat(found.get(0).getId()).isEqualTo("db");
+    }
+
+    @Test
+    public void onlyTheSystemCanSeeThem() {
+        List<AwsBucketCredentials> found = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, Jenkins.ANONYMOUS, Collections.<DomainRequirement>emptyList());
+
+        assertThat(found).isEmpty();
+    }
+
+    @Test
+    public void idsOfStoredCredentialsAreNotOfferedAgain() {
+        AwsBucketCredentialsImpl stored = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, "db", "eu-west-1",
+                "otherBucket", "db", "username", false, "stored", false, false, null, null, null, null);
+        SystemCredentialsProvider.getInstance().getCredentials().add(stored);
+
+        List<AwsBucketCredentials> found = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+
+        assertThat(found).hasSize(1);
+        assertThat(((AwsBucketCredentialsImpl) found.get(0)).getBucketName()).isEqualTo("otherBucket");
+    }
+
+    @Test
+    public void onlyTheFirstPrefixOfferingAnIdIsUsed() {
+        AwsBucketPrefix second = listed("other/", "other/db");
+        AwsBucketPrefix renamed = listed("more/", "more/db");
+        renamed.setIdPrefix("more-");
+        AwsBucketCredentialsConfiguration.get().setPrefixes(Arrays.asList(
+                AwsBucketCredentialsConfiguration.get().getPrefixes().get(0), second, renamed));
+
+        List<AwsBucketCredentials> found = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+
+        assertThat(found).hasSize(2);
+        assertThat(((AwsBucketCredentialsImpl) found.get(0)).getBucketPath()).isEqualTo("jenkins/db");
+        assertThat(found.get(1).getId()).isEqualTo("more-db");
+    }
+
+    @Test
+    public void clashesAreOnlyWorkedOutAgainOnceTheStoreIsSaved() throws Exception {
+        List<AwsBucketCredentials> before = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+        AwsBucketCredentialsImpl stored = new AwsBucketCredentialsImpl(CredentialsScope.GLOBAL, "db", "eu-west-1",
+                "otherBucket", "db", "username", false, "stored", false, false, null, null, null, null);
+        SystemCredentialsProvider.getInstance().getCredentials().add(stored);
+
+        List<AwsBucketCredentials> unsaved = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+        SystemCredentialsProvider.getInstance().save();
+        List<AwsBucketCredentials> saved = CredentialsProvider.lookupCredentials(AwsBucketCredentials.class,
+                jenkinsRule.jenkins, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+
+        assertThat(before).hasSize(1);
+        assertThat(unsaved).hasSize(2);
+        assertThat(saved).hasSize(1);
+        assertThat(((AwsBucketCredentialsImpl) saved.get(0)).getBucketName()).isEqualTo("otherBucket");
+    }
+
+    @Test
+    public void settingsSurviveASaveFromTheConfigurePage() throws Exception {
+        jenkinsRule.configRoundtrip();
+
+        List<AwsBucketPrefix> prefixes = AwsBucketCredentialsConfiguration.get().getPrefixes();
+        assertThat(prefixes).hasSize(1);
+        assertThat(prefixes.get(0).getBucketName()).isEqualTo("bucket");
+        assertThat(prefixes.get(0).getPrefix()).isEqualTo("jenkins/");
+    }
+
+    private static AwsBucketPrefix listed(String bucketPrefix, String key) {
+        AwsBucketPrefix prefix = new AwsBucketPrefix("eu-west-1", "bucket", bucketPrefix, true, null, null);
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        summary.setETag("etag");
+        result.getObjectSummaries().add(summary);
+        AmazonS3 s3 = mock(AmazonS3.class);
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(result);
+        // lists once now, in this thread, so lookups within the refresh interval do not go to s3
+        Whitebox.setInternalState(prefix, "listing", new AwsBucketPrefixListing(prefix, 60000, DIRECT));
+        prefix.listing().credentials(s3);
+        return prefix;
+    }
+}
@@ -0,0 +1,180 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsBucketPrefixListingTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private AmazonS3 s3;
+    private AwsBucketPrefix prefix;
+
+    @Before
+    public void setUp() {
+        this.s3 = mock(AmazonS3.class);
+        this.prefix = new AwsBucketPrefix("eu-west-1", "bucket", "jenkins/", true, "key", "value");
+    }
+
+    @Test
+    public void everyPageOfObjectsBecomesACredential() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page("token", object("jenkins/", "dir"), object("jenkins/db", "etag1")))
+                .thenReturn(page(null, object("jenkins/api", "etag2")));
+        AwsBucketPrefixListing test = new AwsBucketPrefixListing(this.prefix, 0, DIRECT);
+
+        List<AwsBucketCredentialsImpl> credentials = test.credentials(this.s3);
+
+        assertThat(credentials).hasSize(2);
+        assertThat(credentials.get(0).getId()).isEqualTo("db");
+        assertThat(credentials.get(0).getUsername()).isEqualTo("db");
+        assertThat(credentials.get(0).getBucketName()).isEqualTo("bucket");
+        assertThat(credentials.get(0).getBucketPath()).isEqualTo("jenkins/db");
+        assertThat(credentials.get(0).getKmsEncryptionContextKey()).isEqualTo("key");
+        assertThat(credentials.get(1).getId()).isEqualTo("api");
+        ArgumentCaptor<ListObjectsV2Request> requests = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(this.s3, times(2)).listObjectsV2(requests.capture());
+        assertThat(requests.getAllValues().get(0).getPrefix()).isEqualTo("jenkins/");
+        assertThat(requests.getAllValues().get(1).getContinuationToken()).isEqualTo("token");
+    }
+
+    @Test
+    public void onlyChangedObjectsGetNewCredentials() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page(null, object("jenkins/db", "etag1"), object("jenkins/api", "etag2")))
+                .thenReturn(page(null, object("jenkins/db", "etag1"), object("jenkins/api", "etag3")));
+        AwsBucketPrefixListing test = new AwsBucketPrefixListing(this.prefix, 0, DIRECT);
+
+        List<AwsBucketCredentialsImpl> first = test.credentials(this.s3);
+        List<AwsBucketCredentialsImpl> second = test.credentials(this.s3);
+
+        assertThat(second.get(0)).isSameAs(first.get(0));
+        assertThat(second.get(1)).isNotSameAs(first.get(1));
+    }
+
+    @Test
+    public void listingIsKeptUntilTheRefreshInterval() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page(null, object("jenkins/db", "etag1")));
+        AwsBucketPrefixListing test = new AwsBucketPrefixListing(this.prefix, 60000, DIRECT);
+
+        test.credentials(this.s3);
+        List<AwsBucketCredentialsImpl> credentials = test.credentials(this.s3);
+
+        assertThat(credentials).hasSize(1);
+        verify(this.s3, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void previousListingIsKeptWhenListingFails() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page(null, object("jenkins/db", "etag1")))
+                .thenThrow(new RuntimeException("throttled"));
+        AwsBucketPrefixListing test = new AwsBucketPrefixListing(this.prefix, 0, DIRECT);
+
+        test.credentials(this.s3);
+
+        assertThat(test.credentials(this.s3)).hasSize(1);
+    }
+
+    @Test
+    public void firstListingIsMadeInTheBackground() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page(null, object("jenkins/db", "etag1")));
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        AwsBucketPrefixListing test = new AwsBucketPrefixListing(this.prefix, 60000, queueing(queued));
+
+        assertThat(test.credentials(this.s3)).isEmpty();
+        assertThat(test.credentials(this.s3)).isEmpty();
+
+        assertThat(queued).hasSize(1);
+        verify(this.s3, times(0)).listObjectsV2(any(ListObjectsV2Request.class));
+        queued.get(0).run();
+        assertThat(test.credentials(this.s3)).hasSize(1);
+    }
+
+    @Test
+    public void previousListingIsServedWhileTheNextIsMadeInTheBackground() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page(null, object("jenkins/db", "etag1")))
+                .thenReturn(page(null, object("jenkins/db", "etag1"), object("jenkins/api", "etag2")));
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        AwsBucketPrefixListing test = new AwsBucketPrefixListing(this.prefix, 0, queueing(queued));
+        test.credentials(this.s3);
+        queued.remove(0).run();
+
+        List<AwsBucketCredentialsImpl> first = test.credentials(this.s3);
+        assertThat(first).hasSize(1);
+        assertThat(test.credentials(this.s3)).isSameAs(first);
+
+        assertThat(queued).hasSize(1);
+        verify(this.s3, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+        queued.get(0).run();
+        assertThat(test.credentials(this.s3)).hasSize(2);
+    }
+
+    @Test
+    public void idPrefixIsPutInFrontOfEachId() {
+        when(this.s3.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(page(null, object("jenkins/db", "etag1")));
+        this.prefix.setIdPrefix("team-");
+
+        List<AwsBucketCredentialsImpl> credentials = new AwsBucketPrefixListing(this.prefix, 0, DIRECT)
+                .credentials(this.s3);
+
+        assertThat(credentials.get(0).getId()).isEqualTo("team-db");
+        assertThat(credentials.get(0).getBucketPath()).isEqualTo("jenkins/db");
+    }
+
+    private static Executor queueing(final List<Runnable> queued) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+    }
+
+    private static ListObjectsV2Result page(String nextToken, S3ObjectSummary... objects) {
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        for (S3ObjectSummary object : objects) {
+            result.getObjectSummaries().add(object);
+        }
+        result.setNextContinuationToken(nextToken);
+        result.setTruncated(null != nextToken);
+        return result;
+    }
+
+    private static S3ObjectSummary object(String key, String eTag) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        summary.setETag(eTag);
+        return summary;
+    }
+}
@@ -0,0 +1,108 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import hudson.util.Secret;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsBucketSecretCacheTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private AwsBucketSecretCache test = new AwsBucketSecretCache(2);
+
+    @Test
+    public void returnsSecretWithinTtl() {
+        Secret secret = Secret.fromString("password");
+        test.put("key", "id", "bucket", "key", secret, "etag", "version", 60000, 0);
+
+        AwsBucketSecretCache.Entry entry = test.lookup("key");
+        assertThat(entry.isExpired()).isFalse();
+        assertThat(entry.getSecret()).isSameAs(secret);
+        assertThat(entry.getETag()).isEqualTo("etag");
+        assertThat(entry.getVersionId()).isEqualTo("version");
+    }
+
+    @Test
+    public void expiredEntriesAreKeptForRevalidation() {
+        test.put("key", "id", "bucket", "key", Secret.fromString("password"), "etag", null, 0, 0);
+
+        AwsBucketSecretCache.Entry entry = test.lookup("key");
+        assertThat(entry.isExpired()).isTrue();
+        assertThat(entry.getETag()).isEqualTo("etag");
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenFull() {
+        test.put("first", "id1", "bucket", "first", Secret.fromString("one"), null, null, 60000, 0);
+        test.put("second", "id2", "bucket", "second", Secret.fromString("two"), null, null, 60000, 0);
+        test.lookup("first");
+        test.put("third", "id3", "bucket", "third", Secret.fromString("three"), null, null, 60000, 0);
+
+        assertThat(test.size()).isEqualTo(2);
+        assertThat(test.lookup("first")).isNotNull();
+        assertThat(test.lookup("second")).isNull();
+        assertThat(test.lookup("third")).isNotNull();
+    }
+
+    @Test
+    public void invalidateObjectRemovesEntriesReadFromThatObject() {
+        test.put("first", "id1", "bucket", "/path/secret", Secret.fromString("one"), null, null, 60000, 0);
+        test.put("second", "id2", "other", "path/secret", Secret.fromString("two"), null, null, 60000, 0);
+
+        assertThat(test.invalidateObject("bucket", "path/secret")).isEqualTo(1);
+
+        assertThat(test.lookup("first")).isNull();
+        assertThat(test.lookup("second")).isNotNull();
+    }
+
+    @Test
+    public void readsStartedBeforeAnObjectChangedAreNotCached() {
+        long generation = test.generation("bucket", "secret");
+        test.invalidateObject("bucket", "/secret");
+
+        test.put("key", "id", "bucket", "secret", Secret.fromString("stale"), null, null, 60000, generation);
+
+        assertThat(test.lookup("key")).isNull();
+    }
+
+    @Test
+    public void forgottenGenerationsStillRejectOlderReads() {
+        long generation = test.generation("bucket", "secret");
+        test.invalidateObject("bucket", "secret");
+        test.invalidateObject("bucket", "second");
+        test.invalidateObject("bucket", "third");
+
+        test.put("key", "id", "bucket", "secret", Secret.fromString("stale"), null, null, 60000, generation);
+
+        assertThat(test.lookup("key")).isNull();
+    }
+
+    @Test
+    public void clearDropsEntriesAndReadsAlreadyUnderWay() {
+        test.put("key", "id", "bucket", "secret", Secret.fromString("one"), null, null, 60000, 0);
+        long generation = test.generation("bucket", "secret");
+
+        test.clear();
+        test.put("key", "id", "bucket", "secret", Secret.fromString("stale"), null, null, 60000, generation);
+
+        assertThat(test.lookup("key")).isNull();
+        test.put("key", "id", "bucket", "secret", Secret.fromString("fresh"), null, null, 60000,
+                test.generation("bucket", "secret"));
+        assertThat(test.lookup("key")).isNotNull();
+    }
+
+    @Test
+    public void invalidateRemovesAllEntriesForTheCredential() {
+        test.put("first", "id", "bucket", "first", Secret.fromString("one"), null, null, 60000, 0);
+        test.put("second", "other", "bucket", "second", Secret.fromString("two"), null, null, 60000, 0);
+
+        test.invalidate("id");
+
+        assertThat(test.lookup("first")).isNull();
+        assertThat(test.lookup("second")).isNotNull();
+    }
+}
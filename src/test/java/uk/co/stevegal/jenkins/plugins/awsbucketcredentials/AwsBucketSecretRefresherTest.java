@@ -0,0 +1,116 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AwsBucketSecretRefresherTest {
+
+    private QueueingExecutor executor = new QueueingExecutor();
+    private AwsBucketSecretCache cache = new AwsBucketSecretCache(10);
+    private AwsBucketSecretRefresher test = new AwsBucketSecretRefresher(executor, cache);
+
+    @Test
+    public void refreshRunsInTheBackground() {
+        Runnable refresh = mock(Runnable.class);
+
+        test.refreshAhead("key", refresh);
+
+        verify(refresh, times(0)).run();
+        executor.runAll();
+        verify(refresh).run();
+    }
+
+    @Test
+    public void onlyOneRefreshPerKeyIsInFlight() {
+        Runnable refresh = mock(Runnable.class);
+
+        test.refreshAhead("key", refresh);
+        test.refreshAhead("key", refresh);
+        test.refreshAhead("other", refresh);
+
+        assertThat(executor.queued).hasSize(2);
+        executor.runAll();
+        test.refreshAhead("key", refresh);
+        assertThat(executor.queued).hasSize(1);
+    }
+
+    @Test
+    public void failedRefreshBacksOff() {
+        Runnable refresh = mock(Runnable.class);
+        doThrow(new AwsBucketReadingException(new Exception("throttled"))).when(refresh).run();
+
+        test.refreshAhead("key", refresh);
+        executor.runAll();
+        test.refreshAhead("key", refresh);
+
+        assertThat(executor.queued).isEmpty();
+        verify(refresh, times(1)).run();
+    }
+
+    @Test
+    public void refreshThatThrowsAnErrorCanBeScheduledAgain() {
+        Runnable refresh = mock(Runnable.class);
+        doThrow(new LinkageError("bad class")).when(refresh).run();
+
+        test.refreshAhead("key", refresh);
+        try {
+            executor.runAll();
+        } catch (LinkageError expected) {
+            // thrown through to the pool thread
+        }
+        test.refreshAhead("key", refresh);
+
+        assertThat(executor.queued).hasSize(1);
+    }
+
+    @Test
+    public void stateIsDroppedOnceTheCacheEntryIsGone() {
+        Runnable refresh = mock(Runnable.class);
+        doThrow(new AwsBucketReadingException(new Exception("throttled"))).when(refresh).run();
+        cache.put("kept", "id1", "bucket", "kept", null, null, null, 60000, 0);
+
+        test.refreshAhead("kept", refresh);
+        test.refreshAhead("gone", refresh);
+        executor.runAll();
+        assertThat(test.size()).isEqualTo(2);
+
+        test.sweep();
+
+        assertThat(test.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void stateOfARefreshInFlightIsKept() {
+        test.refreshAhead("gone", mock(Runnable.class));
+
+        test.sweep();
+
+        assertThat(test.size()).isEqualTo(1);
+    }
+
+    private static class QueueingExecutor implements Executor {
+        private final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            this.queued.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> toRun = new ArrayList<Runnable>(this.queued);
+            this.queued.clear();
+            for (Runnable runnable : toRun) {
+                runnable.run();
+            }
+        }
+    }
+}
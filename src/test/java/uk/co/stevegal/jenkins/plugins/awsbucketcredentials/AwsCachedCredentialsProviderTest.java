@@ -0,0 +1,79 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsCachedCredentialsProviderTest {
+
+    private final AWSCredentials first = new BasicAWSCredentials("first", "secret");
+    private final AWSCredentials second = new BasicAWSCredentials("second", "secret");
+    private final AWSCredentialsProvider chain = mock(AWSCredentialsProvider.class);
+    private final QueueingExecutor executor = new QueueingExecutor();
+
+    @Test
+    public void resolvesTheChainOnce() {
+        when(chain.getCredentials()).thenReturn(first);
+        AwsCachedCredentialsProvider test = new AwsCachedCredentialsProvider(chain, executor, 60000);
+
+        assertThat(test.getCredentials()).isSameAs(first);
+        assertThat(test.getCredentials()).isSameAs(first);
+
+        verify(chain, times(1)).getCredentials();
+        assertThat(executor.queued).isEmpty();
+    }
+
+    @Test
+    public void refreshesInTheBackgroundWhileServingTheOldCredentials() {
+        when(chain.getCredentials()).thenReturn(first).thenReturn(second);
+        AwsCachedCredentialsProvider test = new AwsCachedCredentialsProvider(chain, executor, 0);
+        test.getCredentials();
+
+        assertThat(test.getCredentials()).isSameAs(first);
+        assertThat(test.getCredentials()).isSameAs(first);
+        assertThat(executor.queued).hasSize(1);
+
+        executor.runAll();
+        assertThat(test.getCredentials()).isSameAs(second);
+    }
+
+    @Test
+    public void failedRefreshKeepsTheOldCredentials() {
+        when(chain.getCredentials()).thenReturn(first).thenThrow(new RuntimeException("metadata endpoint down"));
+        AwsCachedCredentialsProvider test = new AwsCachedCredentialsProvider(chain, executor, 0);
+        test.getCredentials();
+        test.getCredentials();
+
+        executor.runAll();
+
+        assertThat(test.getCredentials()).isSameAs(first);
+    }
+
+    private static class QueueingExecutor implements Executor {
+        private final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            this.queued.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> toRun = new ArrayList<Runnable>(this.queued);
+            this.queued.clear();
+            for (Runnable runnable : toRun) {
+                runnable.run();
+            }
+        }
+    }
+}
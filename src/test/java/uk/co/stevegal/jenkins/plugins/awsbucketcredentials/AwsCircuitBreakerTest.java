@@ -0,0 +1,81 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import org.junit.Test;
+
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class AwsCircuitBreakerTest {
+
+    private final AwsCircuitBreaker breaker = new AwsCircuitBreaker("kms in test", 2, 1000);
+
+    @Test
+    public void opensAfterRepeatedFailures() {
+        breaker.failed(0);
+        assertThat(breaker.allow(0)).isTrue();
+        breaker.failed(0);
+
+        assertThat(breaker.allow(500)).isFalse();
+    }
+
+    @Test
+    public void letsOneTrialThroughOnceOpenPeriodHasPassed() {
+        breaker.failed(0);
+        breaker.failed(0);
+
+        assertThat(breaker.allow(1000)).isTrue();
+        assertThat(breaker.allow(1000)).isFalse();
+        breaker.success();
+        assertThat(breaker.allow(1000)).isTrue();
+    }
+
+    @Test
+    public void failedTrialReopens() {
+        breaker.failed(0);
+        breaker.failed(0);
+        breaker.allow(1000);
+
+        breaker.failed(1000);
+
+        assertThat(breaker.allow(1500)).isFalse();
+        assertThat(breaker.allow(2000)).isTrue();
+    }
+
+    @Test
+    public void openBreakerFailsFast() {
+        AwsCircuitBreaker open = new AwsCircuitBreaker("kms in test", 1, TimeUnit.MINUTES.toNanos(1));
+        open.failed(System.nanoTime());
+
+        try {
+            open.before();
+            fail("expected the breaker to be open");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getMessage()).contains("kms in test");
+        }
+    }
+
+    @Test
+    public void onlyServiceHealthErrorsCount() {
+        AmazonServiceException accessDenied = new AmazonServiceException("denied");
+        accessDenied.setStatusCode(403);
+        AmazonServiceException serverError = new AmazonServiceException("internal");
+        serverError.setStatusCode(500);
+        AmazonServiceException slowDown = new AmazonServiceException("slow down");
+        slowDown.setStatusCode(503);
+        slowDown.setErrorCode("SlowDown");
+
+        assertThat(AwsCircuitBreaker.countsAsFailure(accessDenied)).isFalse();
+        assertThat(AwsCircuitBreaker.countsAsFailure(serverError)).isTrue();
+        assertThat(AwsCircuitBreaker.countsAsFailure(slowDown)).isTrue();
+        assertThat(AwsCircuitBreaker.countsAsFailure(new AmazonClientException("timeout"))).isTrue();
+        assertThat(AwsCircuitBreaker.countsAsFailure(new AwsBucketReadingException("other"))).isFalse();
+        assertThat(AwsCircuitBreaker.countsAsFailure(new SocketException("connection reset"))).isTrue();
+        assertThat(AwsCircuitBreaker.countsAsFailure(
+                new AwsBucketObjectReader.ObjectTooLargeException("too big"))).isFalse();
+    }
+}
@@ -0,0 +1,119 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class AwsClientRegistryTest {
+
+    private AwsClientRegistry<AmazonS3Client> test = new AwsClientRegistry<AmazonS3Client>("test");
+
+    @After
+    public void closeRegistry() {
+        test.close();
+    }
+
+    @Test
+    public void sameSettingsShareAClient() {
+        AmazonS3Client first = test.acquire(new AwsClientRegistry.Key("eu-west-1", "host", 8080), new MockFactory());
+        AmazonS3Client second = test.acquire(new AwsClientRegistry.Key("eu-west-1", "host", 8080), new MockFactory());
+
+        assertThat(second).isSameAs(first);
+        assertThat(test.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void differentSettingsGetDifferentClients() {
+        AmazonS3Client first = test.acquire(new AwsClientRegistry.Key("eu-west-1", "host", 8080), new MockFactory());
+        AmazonS3Client second = test.acquire(new AwsClientRegistry.Key("eu-west-2", "host", 8080), new MockFactory());
+        AmazonS3Client third = test.acquire(new AwsClientRegistry.Key("eu-west-1", "host", 9000), new MockFactory());
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(third).isNotSameAs(first).isNotSameAs(second);
+    }
+
+    @Test
+    public void differentRolesGetDifferentClients() {
+        AmazonS3Client ambient = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1), new MockFactory());
+        AmazonS3Client role = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1,
+                "arn:aws:iam::123456789012:role/a", null), new MockFactory());
+        AmazonS3Client externalId = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1,
+                "arn:aws:iam::123456789012:role/a", "external"), new MockFactory());
+
+        assertThat(role).isNotSameAs(ambient);
+        assertThat(externalId).isNotSameAs(role);
+    }
+
+    @Test
+    public void blankProxyHostIgnoresPort() {
+        assertThat(new AwsClientRegistry.Key("eu-west-1", "   ", 8080))
+                .isEqualTo(new AwsClientRegistry.Key("eu-west-1", null, -1));
+    }
+
+    @Test
+    public void idleClientsAreShutDown() {
+        AmazonS3Client client = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1), new MockFactory());
+
+        test.evictIdle(0);
+
+        verify(client).shutdown();
+        assertThat(test.size()).isZero();
+    }
+
+    @Test
+    public void evictedClientsAreReplacedRatherThanHandedOut() {
+        AwsClientRegistry.Key key = new AwsClientRegistry.Key("eu-west-1", null, -1);
+        AmazonS3Client evicted = test.acquire(key, new MockFactory());
+        test.evictIdle(0);
+
+        AmazonS3Client replacement = test.acquire(key, new MockFactory());
+
+        assertThat(replacement).isNotSameAs(evicted);
+        verify(replacement, never()).shutdown();
+        assertThat(test.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void recentlyUsedClientsAreKept() {
+        AmazonS3Client client = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1), new MockFactory());
+
+        test.evictIdle(60000);
+
+        verify(client, never()).shutdown();
+        assertThat(test.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shutdownAllReleasesEveryClient() {
+        AmazonS3Client first = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1), new MockFactory());
+        AmazonS3Client second = test.acquire(new AwsClientRegistry.Key("eu-west-2", null, -1), new MockFactory());
+
+        test.shutdownAll();
+
+        verify(first).shutdown();
+        verify(second).shutdown();
+        assertThat(test.size()).isZero();
+    }
+
+    @Test
+    public void closeReleasesEveryClient() {
+        AmazonS3Client client = test.acquire(new AwsClientRegistry.Key("eu-west-1", null, -1), new MockFactory());
+
+        test.close();
+
+        verify(client).shutdown();
+        assertThat(test.size()).isZero();
+    }
+
+    private static class MockFactory implements AwsClientRegistry.ClientFactory<AmazonS3Client> {
+        @Override
+        public AmazonS3Client create() {
+            return mock(AmazonS3Client.class);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AwsDataKeyCacheTest {
+
+    private byte[] dataKey = new byte[32];
+    private CountingDecrypter decrypter = new CountingDecrypter();
+
+    {
+        new SecureRandom().nextBytes(dataKey);
+    }
+
+    @Test
+    public void secretsUnderTheSameDataKeyOnlyNeedOneKmsCall() throws Exception {
+        AwsDataKeyCache test = new AwsDataKeyCache(60000, 10);
+        AwsEnvelope first = AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"), "one"));
+        AwsEnvelope second = AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"), "two"));
+
+        assertThat(new String(test.decrypt(first, "context", decrypter), "UTF-8")).isEqualTo("one");
+        assertThat(new String(test.decrypt(second, "context", decrypter), "UTF-8")).isEqualTo("two");
+        assertThat(decrypter.calls).isEqualTo(1);
+    }
+
+    @Test
+    public void differentContextsDoNotShareKeys() throws Exception {
+        AwsDataKeyCache test = new AwsDataKeyCache(60000, 10);
+        AwsEnvelope envelope = AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"), "one"));
+
+        test.decrypt(envelope, "context", decrypter);
+        test.decrypt(envelope, "other", decrypter);
+
+        assertThat(decrypter.calls).isEqualTo(2);
+    }
+
+    @Test
+    public void keysAreDroppedAfterMaxUses() throws Exception {
+        AwsDataKeyCache test = new AwsDataKeyCache(60000, 2);
+        AwsEnvelope envelope = AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"), "one"));
+
+        test.decrypt(envelope, "context", decrypter);
+        test.decrypt(envelope, "context", decrypter);
+        test.decrypt(envelope, "context", decrypter);
+
+        assertThat(decrypter.calls).isEqualTo(2);
+    }
+
+    @Test
+    public void keysAreDroppedAfterTtl() throws Exception {
+        AwsDataKeyCache test = new AwsDataKeyCache(0, 10);
+        AwsEnvelope envelope = AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"), "one"));
+
+        test.decrypt(envelope, "context", decrypter);
+        test.decrypt(envelope, "context", decrypter);
+
+        assertThat(decrypter.calls).isEqualTo(2);
+        assertThat(test.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void keyEvictedWhileDecryptingIsNotWipedUntilItIsDone() throws Exception {
+        final AwsDataKeyCache test = new AwsDataKeyCache(60000, 10);
+        AwsEnvelope first = AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"), "one"));
+        test.decrypt(first, "context", decrypter);
+        AwsEnvelope inUse = mock(AwsEnvelope.class);
+        when(inUse.getEncryptedDataKey()).thenReturn(first.getEncryptedDataKey());
+        when(inUse.decrypt(any(byte[].class))).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) throws Throwable {
+                byte[] key = (byte[]) invocation.getArguments()[0];
+                // other contexts push the key being used out of the cache
+                for (int i = 0; i < AwsDataKeyCache.MAX_ENTRIES; i++) {
+                    test.decrypt(AwsEnvelope.parse(AwsEnvelopeTest.envelope(dataKey, "wrapped".getBytes("UTF-8"),
+                            "other")), "context" + i, decrypter);
+                }
+                return Arrays.copyOf(key, key.length);
+            }
+        });
+
+        byte[] used = test.decrypt(inUse, "context", decrypter);
+
+        assertThat(used).isEqualTo(dataKey);
+        assertThat(decrypter.calls).isEqualTo(1 + AwsDataKeyCache.MAX_ENTRIES);
+    }
+
+    private class CountingDecrypter implements AwsDataKeyCache.DataKeyDecrypter {
+        private int calls;
+
+        @Override
+        public byte[] decrypt(byte[] encryptedDataKey) {
+            this.calls++;
+            return Arrays.copyOf(dataKey, dataKey.length);
+        }
+    }
+}
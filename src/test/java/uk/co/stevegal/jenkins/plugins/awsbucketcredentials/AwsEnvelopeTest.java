@@ -0,0 +1,67 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import junit.framework.TestCase;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsEnvelopeTest {
+
+    static byte[] envelope(byte[] dataKey, byte[] encryptedDataKey, String plaintext) throws Exception {
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(dataKey, "AES"), new GCMParameterSpec(128, iv));
+        byte[] ciphertext = cipher.doFinal(plaintext.getBytes("UTF-8"));
+        return ("{\"encryptedDataKey\":\"" + Base64.encodeBase64String(encryptedDataKey)
+                + "\",\"iv\":\"" + Base64.encodeBase64String(iv)
+                + "\",\"ciphertext\":\"" + Base64.encodeBase64String(ciphertext) + "\"}").getBytes("UTF-8");
+    }
+
+    @Test
+    public void recognisesEnvelopes() throws Exception {
+        assertThat(AwsEnvelope.isEnvelope("  {\"iv\":\"\"}".getBytes("UTF-8"))).isTrue();
+        assertThat(AwsEnvelope.isEnvelope(new byte[]{1, 2, 3, '{'})).isFalse();
+        assertThat(AwsEnvelope.isEnvelope(new byte[0])).isFalse();
+    }
+
+    @Test
+    public void decryptsWithTheDataKey() throws Exception {
+        byte[] dataKey = new byte[32];
+        new SecureRandom().nextBytes(dataKey);
+        AwsEnvelope envelope = AwsEnvelope.parse(envelope(dataKey, "wrapped".getBytes("UTF-8"), "password"));
+
+        assertThat(new String(envelope.getEncryptedDataKey(), "UTF-8")).isEqualTo("wrapped");
+        assertThat(new String(envelope.decrypt(dataKey), "UTF-8")).isEqualTo("password");
+    }
+
+    @Test
+    public void wrongKeyFailsAuthentication() throws Exception {
+        byte[] dataKey = new byte[32];
+        AwsEnvelope envelope = AwsEnvelope.parse(envelope(dataKey, "wrapped".getBytes("UTF-8"), "password"));
+        byte[] wrongKey = new byte[32];
+        wrongKey[0] = 1;
+        try {
+            envelope.decrypt(wrongKey);
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getCause()).isNotNull();
+        }
+    }
+
+    @Test
+    public void malformedEnvelopeIsReported() throws Exception {
+        try {
+            AwsEnvelope.parse("{\"iv\":\"AAAA\"}".getBytes("UTF-8"));
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getCause()).isNotNull();
+        }
+    }
+}
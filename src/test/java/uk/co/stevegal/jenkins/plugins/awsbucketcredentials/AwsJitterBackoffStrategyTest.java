@@ -0,0 +1,48 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsJitterBackoffStrategyTest {
+
+    @Test
+    public void delaysStayBetweenTheBaseAndTheCap() {
+        AwsJitterBackoffStrategy strategy = new AwsJitterBackoffStrategy(100, 500, 2000, new Random(42));
+        AmazonClientException error = new AmazonClientException("connection reset");
+
+        for (int retry = 0; retry < 50; retry++) {
+            assertThat(strategy.delayBeforeNextRetry(null, error, retry)).isBetween(100L, 2000L);
+        }
+    }
+
+    @Test
+    public void delayGrowsFromThePreviousDelay() {
+        Random alwaysHighest = new Random() {
+            @Override
+            public double nextDouble() {
+                return 1.0;
+            }
+        };
+        AwsJitterBackoffStrategy strategy = new AwsJitterBackoffStrategy(100, 500, 2000, alwaysHighest);
+        AmazonClientException error = new AmazonClientException("connection reset");
+
+        assertThat(strategy.delayBeforeNextRetry(null, error, 0)).isEqualTo(300);
+        assertThat(strategy.delayBeforeNextRetry(null, error, 1)).isEqualTo(900);
+        assertThat(strategy.delayBeforeNextRetry(null, error, 2)).isEqualTo(2000);
+        assertThat(strategy.delayBeforeNextRetry(null, error, 0)).isEqualTo(300);
+    }
+
+    @Test
+    public void throttlingStartsFromALongerDelay() {
+        AwsJitterBackoffStrategy strategy = new AwsJitterBackoffStrategy(100, 500, 20000, new Random(42));
+        AmazonServiceException throttled = new AmazonServiceException("slow down");
+        throttled.setErrorCode("ThrottlingException");
+
+        assertThat(strategy.delayBeforeNextRetry(null, throttled, 0)).isGreaterThanOrEqualTo(500);
+    }
+}
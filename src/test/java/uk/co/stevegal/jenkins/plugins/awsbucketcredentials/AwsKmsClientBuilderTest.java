@@ -79,4 +79,21 @@ public class AwsKmsClientBuilderTest {
         URI endpoint =(URI)Whitebox.getInternalState(amazonKmsClient,"endpoint");
         assertThat(endpoint.toString()).contains("us-east-1");
     }
+
+    @Test
+    public void buildersWithTheSameSettingsShareAClient() {
+        AWSKMSClient first = new AwsKmsClientBuilder().region("eu-west-2").proxyHost("host").proxyPort(8080).build();
+        AWSKMSClient second = new AwsKmsClientBuilder().region("eu-west-2").proxyHost("host").proxyPort(8080).build();
+        AWSKMSClient other = new AwsKmsClientBuilder().region("eu-west-2").build();
+
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+    }
+
+    @Test
+    public void clientsKeepConnectionsAlive() {
+        AWSKMSClient client = new AwsKmsClientBuilder().region("eu-west-1").build();
+        ClientConfiguration configuration = (ClientConfiguration) Whitebox.getInternalState(client, "clientConfiguration");
+        assertThat(configuration.useTcpKeepAlive()).isTrue();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class AwsKmsLimiterTest {
+
+    @Test
+    public void unlimitedByDefault() throws Exception {
+        AwsKmsLimiter limiter = new AwsKmsLimiter("eu-west-1");
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+        }
+
+        assertThat(limiter.inFlight()).isEqualTo(100);
+    }
+
+    @Test
+    public void capsConcurrentRequests() throws Exception {
+        final AwsKmsLimiter limiter = new AwsKmsLimiter("eu-west-1");
+        limiter.configure(0, 1);
+        AwsKmsLimiter.Permit first = limiter.acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<AwsKmsLimiter.Permit> second = executor.submit(new Callable<AwsKmsLimiter.Permit>() {
+                @Override
+                public AwsKmsLimiter.Permit call() throws Exception {
+                    return limiter.acquire();
+                }
+            });
+            try {
+                second.get(200, TimeUnit.MILLISECONDS);
+                fail("expected the second request to wait");
+            } catch (TimeoutException e) {
+                // still waiting for the first permit
+            }
+
+            first.release();
+
+            assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void spacesRequestsToTheRate() throws Exception {
+        AwsKmsLimiter limiter = new AwsKmsLimiter("eu-west-1");
+        limiter.configure(10, 0);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire().release();
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(250);
+    }
+
+    @Test
+    public void permitsTakenBeforeReconfiguringCountAgainstTheNewLimit() throws Exception {
+        final AwsKmsLimiter limiter = new AwsKmsLimiter("eu-west-1");
+        limiter.configure(0, 1);
+        AwsKmsLimiter.Permit old = limiter.acquire();
+        limiter.configure(0, 2);
+        AwsKmsLimiter.Permit first = limiter.acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<AwsKmsLimiter.Permit> second = executor.submit(new Callable<AwsKmsLimiter.Permit>() {
+                @Override
+                public AwsKmsLimiter.Permit call() throws Exception {
+                    return limiter.acquire();
+                }
+            });
+            try {
+                second.get(200, TimeUnit.MILLISECONDS);
+                fail("expected the permit taken under the old limit to still count");
+            } catch (TimeoutException e) {
+                // two already in flight
+            }
+
+            old.release();
+
+            assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+            assertThat(limiter.inFlight()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void raisingTheLimitLetsWaitingRequestsThrough() throws Exception {
+        final AwsKmsLimiter limiter = new AwsKmsLimiter("eu-west-1");
+        limiter.configure(0, 1);
+        limiter.acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<AwsKmsLimiter.Permit> waiting = executor.submit(new Callable<AwsKmsLimiter.Permit>() {
+                @Override
+                public AwsKmsLimiter.Permit call() throws Exception {
+                    return limiter.acquire();
+                }
+            });
+            Thread.sleep(100);
+
+            limiter.configure(0, 0);
+
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isNotNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void releasingTwiceFreesOneSlot() throws Exception {
+        AwsKmsLimiter limiter = new AwsKmsLimiter("eu-west-1");
+        AwsKmsLimiter.Permit first = limiter.acquire();
+        limiter.acquire();
+
+        first.release();
+        first.release();
+
+        assertThat(limiter.inFlight()).isEqualTo(1);
+    }
+}
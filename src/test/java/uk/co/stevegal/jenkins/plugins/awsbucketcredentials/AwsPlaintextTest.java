@@ -0,0 +1,49 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsPlaintextTest {
+
+    @Test
+    public void decodesUtf8() throws Exception {
+        String plain = "paßwörd €";
+
+        assertThat(AwsPlaintext.decode(ByteBuffer.wrap(plain.getBytes("UTF-8")))).isEqualTo(plain);
+    }
+
+    @Test
+    public void decodesPlaintextLargerThanThePooledBuffer() {
+        char[] chars = new char[AwsPlaintext.POOLED_CHARS * 2 + 3];
+        Arrays.fill(chars, 'x');
+        String plain = new String(chars);
+
+        assertThat(AwsPlaintext.decode(ByteBuffer.wrap(plain.getBytes()))).isEqualTo(plain);
+    }
+
+    @Test
+    public void shorterPlaintextDoesNotSeeAnEarlierOne() {
+        AwsPlaintext.decode(ByteBuffer.wrap("a much longer secret".getBytes()));
+
+        assertThat(AwsPlaintext.decode(ByteBuffer.wrap("short".getBytes()))).isEqualTo("short");
+    }
+
+    @Test
+    public void replacesMalformedInput() {
+        String decoded = AwsPlaintext.decode(ByteBuffer.wrap(new byte[]{'o', 'k', (byte) 0xff}));
+
+        assertThat(decoded).startsWith("ok").hasSize(3);
+    }
+
+    @Test
+    public void decodesOnlyTheRemainingBytes() {
+        ByteBuffer bytes = ByteBuffer.wrap("skipsecret".getBytes());
+        bytes.position(4);
+
+        assertThat(AwsPlaintext.decode(bytes)).isEqualTo("secret");
+    }
+}
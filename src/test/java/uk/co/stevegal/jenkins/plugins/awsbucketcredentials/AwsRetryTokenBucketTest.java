@@ -0,0 +1,37 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsRetryTokenBucketTest {
+
+    @Test
+    public void allowsTheBurstThenRefusesRetries() {
+        AwsRetryTokenBucket bucket = new AwsRetryTokenBucket(2, 1, 0);
+
+        assertThat(bucket.tryAcquire(0)).isTrue();
+        assertThat(bucket.tryAcquire(0)).isTrue();
+        assertThat(bucket.tryAcquire(0)).isFalse();
+    }
+
+    @Test
+    public void refillsOverTime() {
+        AwsRetryTokenBucket bucket = new AwsRetryTokenBucket(1, 2, 0);
+        bucket.tryAcquire(0);
+
+        assertThat(bucket.tryAcquire(TimeUnit.MILLISECONDS.toNanos(100))).isFalse();
+        assertThat(bucket.tryAcquire(TimeUnit.MILLISECONDS.toNanos(600))).isTrue();
+    }
+
+    @Test
+    public void neverHoldsMoreThanTheBurst() {
+        AwsRetryTokenBucket bucket = new AwsRetryTokenBucket(1, 100, 0);
+        long later = TimeUnit.SECONDS.toNanos(60);
+
+        assertThat(bucket.tryAcquire(later)).isTrue();
+        assertThat(bucket.tryAcquire(later)).isFalse();
+    }
+}
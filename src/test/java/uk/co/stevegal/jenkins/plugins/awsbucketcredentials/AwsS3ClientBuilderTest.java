@@ -68,4 +68,14 @@ public class AwsS3ClientBuilderTest {
             assertThat(configuration.getProxyPort()).isEqualTo(-1);
         }
     }
+
+    @Test
+    public void buildersWithTheSameSettingsShareAClient() {
+        AmazonS3Client first = new AwsS3ClientBuilder().region("eu-west-2").proxyHost("host").proxyPort(8080).build();
+        AmazonS3Client second = new AwsS3ClientBuilder().region("eu-west-2").proxyHost("host").proxyPort(8080).build();
+        AmazonS3Client other = new AwsS3ClientBuilder().region("eu-west-2").build();
+
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package uk.co.stevegal.jenkins.plugins.awsbucketcredentials;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AwsSingleFlightTest {
+
+    private AwsSingleFlight<String> test = new AwsSingleFlight<String>();
+
+    @Test
+    public void concurrentCallersShareOneCall() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return "password";
+            }
+        };
+        final AtomicReference<String> leaderResult = new AtomicReference<String>();
+        final AtomicReference<String> followerResult = new AtomicReference<String>();
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leaderResult.set(test.execute("key", call));
+            }
+        });
+        leader.start();
+        while (test.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+        Thread follower = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                followerResult.set(test.execute("key", call));
+            }
+        });
+        follower.start();
+        while (follower.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(leaderResult.get()).isEqualTo("password");
+        assertThat(followerResult.get()).isEqualTo("password");
+        assertThat(test.inFlight()).isZero();
+    }
+
+    @Test
+    public void exceptionsAreRethrownToTheCaller() {
+        try {
+            test.execute("key", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new AwsBucketReadingException(new Exception("access denied"));
+                }
+            });
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getCause()).hasMessage("access denied");
+        }
+        assertThat(test.inFlight()).isZero();
+    }
+
+    @Test
+    public void checkedExceptionsAreWrapped() {
+        try {
+            test.execute("key", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new java.io.IOException("connection reset");
+                }
+            });
+            TestCase.fail("should have thrown exception");
+        } catch (AwsBucketReadingException e) {
+            assertThat(e.getCause()).isInstanceOf(java.io.IOException.class);
+        }
+    }
+
+    @Test
+    public void sequentialCallsAreNotShared() {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "call" + calls.incrementAndGet();
+            }
+        };
+
+        assertThat(test.execute("key", call)).isEqualTo("call1");
+        assertThat(test.execute("key", call)).isEqualTo("call2");
+    }
+
+    @Test
+    public void blockingCallersJoinAnAsynchronousCall() throws Exception {
+        final SettableFuture<String> started = SettableFuture.create();
+        final AtomicInteger calls = new AtomicInteger();
+        ListenableFuture<String> first = test.executeAsync("key", new Callable<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> call() {
+                calls.incrementAndGet();
+                return started;
+            }
+        });
+        ListenableFuture<String> second = test.executeAsync("key", new Callable<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> call() {
+                calls.incrementAndGet();
+                return Futures.immediateFuture("second");
+            }
+        });
+        final AtomicReference<String> blockingResult = new AtomicReference<String>();
+        Thread blocking = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                blockingResult.set(test.execute("key", new Callable<String>() {
+                    @Override
+                    public String call() {
+                        calls.incrementAndGet();
+                        return "blocking";
+                    }
+                }));
+            }
+        });
+        blocking.start();
+        while (blocking.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        started.set("password");
+        blocking.join();
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(first.get()).isEqualTo("password");
+        assertThat(second.get()).isEqualTo("password");
+        assertThat(blockingResult.get()).isEqualTo("password");
+        assertThat(test.inFlight()).isZero();
+    }
+
+    @Test
+    public void asynchronousFailuresAreSharedAndCleared() throws Exception {
+        ListenableFuture<String> failed = test.executeAsync("key", new Callable<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> call() {
+                return Futures.immediateFailedFuture(new AwsBucketReadingException("access denied"));
+            }
+        });
+
+        try {
+            failed.get();
+            TestCase.fail("should have thrown exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).hasMessage("access denied");
+        }
+        assertThat(test.inFlight()).isZero();
+    }
+}